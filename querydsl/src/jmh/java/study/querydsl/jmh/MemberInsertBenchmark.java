@@ -0,0 +1,91 @@
+package study.querydsl.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberBatchInserter;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 대량 저장 방법별 비교. 결과는 초당 저장한 row 수다. (invocation 한번에 ROWS 건)
+ * - saveAll : spring data saveAll (persist 반복, 1차 캐시에 다 쌓인다)
+ * - persistFlushClear : persist + 1000건마다 flush/clear
+ * - batchInserter : MemberBatchInserter (pooled id 블록 + JDBC batch, 영속성 컨텍스트 안 씀)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MemberInsertBenchmark {
+
+    private static final int ROWS = 10000;
+
+    private EntityManager em;
+    private TransactionTemplate tx;
+    private MemberRepository memberRepository;
+    private MemberBatchInserter batchInserter;
+    private Team team;
+    private Long teamId;
+
+    @Setup
+    public void setUp(SeededApplication app) {
+        em = app.getBean(EntityManager.class);
+        tx = app.getBean(TransactionTemplate.class);
+        memberRepository = app.getBean(MemberRepository.class);
+        batchInserter = app.getBean(MemberBatchInserter.class);
+
+        teamId = tx.execute(status -> {
+            Team insertTeam = new Team("insertTeam");
+            em.persist(insertTeam);
+            return insertTeam.getId();
+        });
+        //다시 읽은 준영속 팀 (members 를 읽지 않은 상태라 회원을 만들어도 컬렉션에 쌓이지 않는다)
+        team = tx.execute(status -> em.find(Team.class, teamId));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void saveAll() {
+        tx.executeWithoutResult(status -> memberRepository.saveAll(newMembers(em.getReference(Team.class, teamId))));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void persistFlushClear() {
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < ROWS; i++) {
+                em.persist(new Member("insert" + i, i % 100, em.getReference(Team.class, teamId)));
+                if ((i + 1) % 1000 == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void batchInserter() {
+        batchInserter.insertMembers(newMembers(team));
+    }
+
+    private List<Member> newMembers(Team team) {
+        List<Member> members = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            members.add(new Member("insert" + i, i % 100, team));
+        }
+        return members;
+    }
+}
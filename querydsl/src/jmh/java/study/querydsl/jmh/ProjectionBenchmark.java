@@ -0,0 +1,136 @@
+package study.querydsl.jmh;
+
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.support.BeanMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 같은 쿼리를 DTO 로 받는 방법별 비교 (Projections.bean / fields / constructor / @QueryProjection / BeanMapper)
+ * JDBC 로 받는 경우는 BeanPropertyRowMapper 와 BeanMapper.rowMapper 를 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProjectionBenchmark {
+
+    private static final String TEAM_NAME = "team1";
+
+    private static final String JDBC_SQL = "select m.member_id, m.username, m.age, t.team_id, t.name as team_name"
+            + " from member m left join team t on m.team_id = t.team_id where t.name = ?";
+
+    private JPAQueryFactory queryFactory;
+    private JdbcTemplate jdbcTemplate;
+    private RowMapper<MemberTeamDto> beanPropertyRowMapper;
+    private RowMapper<MemberTeamDto> compiledRowMapper;
+
+    @Setup
+    public void setUp(SeededApplication app) {
+        queryFactory = app.getBean(JPAQueryFactory.class);
+        jdbcTemplate = app.getBean(JdbcTemplate.class);
+        beanPropertyRowMapper = new BeanPropertyRowMapper<>(MemberTeamDto.class);
+        compiledRowMapper = BeanMapper.of(MemberTeamDto.class, "memberId", "username", "age", "teamId", "teamName").rowMapper();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> bean() {
+        return queryFactory
+                .select(Projections.bean(MemberTeamDto.class,
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq(TEAM_NAME))
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> fields() {
+        return queryFactory
+                .select(Projections.fields(MemberTeamDto.class,
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq(TEAM_NAME))
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> constructor() {
+        return queryFactory
+                .select(Projections.constructor(MemberTeamDto.class,
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq(TEAM_NAME))
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> queryProjection() {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq(TEAM_NAME))
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> compiledBean() {
+        return queryFactory
+                .select(BeanMapper.projection(MemberTeamDto.class,
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq(TEAM_NAME))
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> jdbcBeanPropertyRowMapper() {
+        return jdbcTemplate.query(JDBC_SQL, beanPropertyRowMapper, TEAM_NAME);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> jdbcCompiledRowMapper() {
+        return jdbcTemplate.query(JDBC_SQL, compiledRowMapper, TEAM_NAME);
+    }
+}
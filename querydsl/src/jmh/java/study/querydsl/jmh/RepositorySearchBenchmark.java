@@ -0,0 +1,87 @@
+package study.querydsl.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BooleanBuilder vs where 파라미터 (둘 다 QueryDSL 로 매번 쿼리를 만드는 경우),
+ * where 파라미터 QueryDSL vs 미리 만든 JPQL(MemberSearchTemplate, 지금의 searchByWhereParam),
+ * searchPageSimple vs searchPageComplex 비교 (페이징 메서드도 MemberSearchTemplate 을 쓴다)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RepositorySearchBenchmark {
+
+    private MemberJpaRepository memberJpaRepository;
+    private MemberRepository memberRepository;
+    private MemberSearchCondition condition;
+    private PageRequest firstPage;
+    private PageRequest lastPage;
+
+    @Setup
+    public void setUp(SeededApplication app) {
+        memberJpaRepository = app.getBean(MemberJpaRepository.class);
+        memberRepository = app.getBean(MemberRepository.class);
+
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(40);
+
+        int pageSize = 20;
+        firstPage = PageRequest.of(0, pageSize);
+        //team1 에서 20~40살은 대략 전체의 1/10 * 21/100
+        int matches = app.memberCount / app.teamCount * 21 / 100;
+        lastPage = PageRequest.of(Math.max(matches - 1, 0) / pageSize, pageSize);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByBuilder() {
+        return memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByWhereParam() {
+        return memberJpaRepository.searchByWhereParam_Querydsl(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByWhereParam_template() {
+        return memberJpaRepository.searchByWhereParam(condition);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageSimple_firstPage() {
+        return memberRepository.searchPageSimple(condition, firstPage);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageComplex_firstPage() {
+        return memberRepository.searchPageComplex(condition, firstPage);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageSimple_lastPage() {
+        return memberRepository.searchPageSimple(condition, lastPage);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageComplex_lastPage() {
+        return memberRepository.searchPageComplex(condition, lastPage);
+    }
+}
@@ -0,0 +1,88 @@
+package study.querydsl.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 벤치마크용 스프링 컨텍스트.
+ * 임베디드 인메모리 H2 에 memberCount 명의 회원을 teamCount 개 팀에 나눠 넣고 시작한다.
+ */
+@State(Scope.Benchmark)
+public class SeededApplication {
+
+    @Param({"1000", "100000"})
+    public int memberCount;
+
+    @Param({"10"})
+    public int teamCount;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                //properties(...) 는 기본값이라 yml(spring.profiles.active=local, spring.datasource.url)보다 우선순위가 낮다.
+                //profiles("jmh") 도 local 에 더해지기만 해서 initMember 시드가 같이 들어가므로 모두 커맨드라인 인자로 준다
+                .run(
+                        "--spring.profiles.active=jmh",
+                        "--spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.format_sql=false",
+                        "--decorator.datasource.p6spy.enable-logging=false",
+                        "--logging.level.org.hibernate.SQL=warn",
+                        "--logging.level.org.hibernate.type=warn",
+                        "--member.search.cache.maximum-weight=0" //DB 까지 가는 비용을 재야하므로 결과 캐시는 끈다
+                );
+        seed();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    private void seed() {
+        EntityManager em = getBean(EntityManager.class);
+        TransactionTemplate tx = getBean(TransactionTemplate.class);
+
+        List<Long> teamIds = tx.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < teamCount; i++) {
+                Team team = new Team("team" + i);
+                em.persist(team);
+                ids.add(team.getId());
+            }
+            return ids;
+        });
+
+        int chunk = 1000;
+        for (int from = 0; from < memberCount; from += chunk) {
+            int start = from;
+            tx.executeWithoutResult(status -> {
+                for (int i = start; i < Math.min(start + chunk, memberCount); i++) {
+                    Team team = em.getReference(Team.class, teamIds.get(i % teamCount));
+                    em.persist(new Member("member" + i, i % 100, team));
+                }
+            });
+        }
+    }
+}
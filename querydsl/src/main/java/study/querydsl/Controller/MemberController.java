@@ -1,17 +1,27 @@
 package study.querydsl.Controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberCursorResult;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSearchCoalescer;
+import study.querydsl.support.MemberQueryMetrics;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequiredArgsConstructor
@@ -19,22 +29,60 @@ public class MemberController {
 
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberSearchCoalescer searchCoalescer;
+    private final MemberQueryMetrics queryMetrics;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition){
 //        condition.setTeamName(condition.getTeamName());
-        return memberJpaRepository.searchByWhereParam(condition);
+        //같은 조건으로 동시에 들어온 요청은 쿼리 하나의 결과를 같이 받는다
+        return searchCoalescer.search("searchByWhereParam", condition,
+                () -> Collections.unmodifiableList(memberJpaRepository.searchByWhereParam(condition)));
+    }
+
+    //결과를 메모리에 모으지 않고 한 줄에 하나씩 NDJSON 으로 바로 내려준다
+    @GetMapping("/v1/members/export")
+    public void exportMemberV1(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+
+        OutputStream out = response.getOutputStream();
+        long[] rows = {0};
+        memberJpaRepository.exportByWhereParam(condition, dto -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(dto));
+                out.write('\n');
+                rows[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+        queryMetrics.recordRows("MemberJpaRepository.exportByWhereParam", condition, rows[0]);
     }
 
     @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable){
+    public CompletableFuture<Page<MemberTeamDto>> searchMemberV2(MemberSearchCondition condition, Pageable pageable){
 
-        return memberRepository.searchPageSimple(condition,pageable);
+        //content 와 count 쿼리를 검색 실행기에서 동시에 보낸다
+        return searchCoalescer.searchAsync("searchPageSimple", condition, pageable,
+                () -> memberRepository.searchPageSimpleAsync(condition,pageable));
     }
 
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable){
+    public CompletableFuture<Page<MemberTeamDto>> searchMemberV3(MemberSearchCondition condition, Pageable pageable){
+
+        //첫 페이지는 필요할 때만 count 쿼리를 보내고, 다음 페이지부터는 content 와 count 를 동시에 보낸다
+        return searchCoalescer.searchAsync("searchPageComplex", condition, pageable,
+                () -> memberRepository.searchPageComplexAsync(condition,pageable));
+    }
+
+    @GetMapping("/v4/members")
+    public MemberCursorResult searchMemberV4(MemberSearchCondition condition,
+                                             @RequestParam(required = false) Long lastMemberId,
+                                             @RequestParam(defaultValue = "20") int size){
 
-        return memberRepository.searchPageComplex(condition,pageable);
+        return MemberCursorResult.of(memberRepository.searchSliceByCursor(condition, lastMemberId, size));
     }
 }
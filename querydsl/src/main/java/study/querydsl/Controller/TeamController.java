@@ -0,0 +1,22 @@
+package study.querydsl.Controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.TeamStatsRepository;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStatsRepository teamStatsRepository;
+
+    @GetMapping("/v1/teams/stats")
+    public List<TeamStatsDto> teamStats(@RequestParam(required = false) String teamName){
+        return teamName == null ? teamStatsRepository.findAll() : teamStatsRepository.findByTeamName(teamName);
+    }
+}
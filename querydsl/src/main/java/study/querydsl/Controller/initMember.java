@@ -1,17 +1,18 @@
 package study.querydsl.Controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberBatchInserter;
 
 import javax.annotation.PostConstruct;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
 
-@Profile("local")
+@Profile({"local", "perf"})
 @Component
 @RequiredArgsConstructor
 public class initMember {
@@ -24,23 +25,58 @@ public class initMember {
     }
 
 
+    /**
+     * 시드 데이터는 MemberBatchInserter 로 batch-size 개씩 JDBC batch insert 하고 묶음마다 커밋한다.
+     * (회원 수백만 명도 한 트랜잭션/영속성 컨텍스트에 쌓이지 않고, 회원마다 캐시/롤업/인덱스 리스너가 돌지 않는다)
+     */
     @Component
     static class initMemberService{
-        @PersistenceContext
-        EntityManager em;
+        private final MemberBatchInserter memberBatchInserter;
+        private final int memberCount;
+        private final int teamCount;
+        private final int batchSize;
+
+        initMemberService(MemberBatchInserter memberBatchInserter,
+                          @Value("${member.init.count:100}") int memberCount,
+                          @Value("${member.init.team-count:2}") int teamCount,
+                          @Value("${member.init.batch-size:1000}") int batchSize) {
+            if (teamCount <= 0) {
+                throw new IllegalStateException("member.init.team-count 는 1 이상이어야 합니다: " + teamCount);
+            }
+            if (batchSize <= 0) {
+                throw new IllegalStateException("member.init.batch-size 는 1 이상이어야 합니다: " + batchSize);
+            }
+            this.memberBatchInserter = memberBatchInserter;
+            this.memberCount = memberCount;
+            this.teamCount = teamCount;
+            this.batchSize = batchSize;
+        }
 
-        @Transactional
         public void init(){
-            Team teamA = new Team("teamA");
-            Team teamB = new Team("teamB");
+            List<Team> teams = new ArrayList<>();
+            for(int i = 0; i<teamCount; i++){
+                teams.add(new Team(teamName(i)));
+            }
+            memberBatchInserter.insertTeams(teams);
 
-            em.persist(teamA);
-            em.persist(teamB);
+            List<Member> chunk = new ArrayList<>(Math.min(batchSize, Math.max(memberCount, 1)));
+            for(int i = 0; i<memberCount; i++){
+                //setTeam 으로 넣어서 팀의 members 컬렉션에 시드 회원이 계속 쌓이지 않게 한다
+                Member member = new Member("member"+i, i);
+                member.setTeam(teams.get(i % teamCount));
+                chunk.add(member);
 
-            for(int i = 0; i<100; i++){
-                Team selectedTeam = i % 2 ==0 ? teamA : teamB;
-                em.persist(new Member("member"+i, i, selectedTeam));
+                if(chunk.size() == batchSize){
+                    memberBatchInserter.insertMembers(chunk);
+                    chunk = new ArrayList<>(batchSize);
+                }
             }
+            memberBatchInserter.insertMembers(chunk);
+        }
+
+        //팀이 26개 이하면 기존처럼 teamA, teamB ... 로 만든다
+        private String teamName(int index) {
+            return teamCount <= 26 ? "team" + (char) ('A' + index) : "team" + index;
         }
     }
 }
@@ -1,13 +1,18 @@
 package study.querydsl;
 
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.cfg.AvailableSettings;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import study.querydsl.support.SqlStatementCounter;
 
 import javax.persistence.EntityManager;
 
 @SpringBootApplication
+@EnableScheduling //MemberUsernameIndex.refresh
 public class QuerydslApplication {
 
 	public static void main(String[] args) {
@@ -18,4 +23,10 @@ public class QuerydslApplication {
 	JPAQueryFactory jpaQueryFactory(EntityManager em){
 		return new JPAQueryFactory(em);
 	}
+
+	//실행되는 SQL 수를 세기 위해 hibernate 에 StatementInspector 로 등록
+	@Bean
+	HibernatePropertiesCustomizer sqlStatementCounterCustomizer(SqlStatementCounter sqlStatementCounter){
+		return hibernateProperties -> hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, sqlStatementCounter);
+	}
 }
@@ -0,0 +1,26 @@
+package study.querydsl.dto;
+
+import lombok.Getter;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+@Getter
+public class MemberCursorResult {
+
+    private final List<MemberTeamDto> content;
+    private final boolean hasNext;
+    private final Long nextCursor; //다음 요청때 lastMemberId로 넘겨주면 된다
+
+    public MemberCursorResult(List<MemberTeamDto> content, boolean hasNext, Long nextCursor) {
+        this.content = content;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+
+    public static MemberCursorResult of(Slice<MemberTeamDto> slice) {
+        List<MemberTeamDto> content = slice.getContent();
+        Long nextCursor = content.isEmpty() ? null : content.get(content.size() - 1).getMemberId();
+        return new MemberCursorResult(content, slice.hasNext(), slice.hasNext() ? nextCursor : null);
+    }
+}
@@ -1,10 +1,19 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_team_age", columnList = "team_id, age"), //팀 이름 조건 + 나이 범위
+        @Index(name = "idx_member_age", columnList = "age") //나이 범위만 있을 때
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) //findByUsername 쿼리 캐시가 id 목록만 저장하므로 엔티티도 캐시되어야 효과가 있다
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
@@ -12,7 +21,8 @@ import javax.persistence.*;
 public class Member {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50) //pooled: 시퀀스 한번에 id 50개
     @Column(name = "member_id")
     private Long id;
 
@@ -36,13 +46,21 @@ public class Member {
         this.username = username;
         this.age = age;
         if(team != null){
-            chageTeam(team);
+            changeTeam(team);
         }
     }
 
-    private void chageTeam(Team team) {
+    /**
+     * 연관관계 편의 메서드. team.members 가 아직 로딩되지 않았으면 컬렉션을 읽지 않는다. (Team.addMember)
+     */
+    public void changeTeam(Team team) {
+        if (this.team != null) {
+            this.team.removeMember(this);
+        }
         this.team = team;
-        team.getMembers().add(this);
+        if (team != null) {
+            team.addMember(this);
+        }
     }
 
 }
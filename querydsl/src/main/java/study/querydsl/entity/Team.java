@@ -1,12 +1,20 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.Hibernate;
+import org.hibernate.LazyInitializationException;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "idx_team_name", columnList = "name"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) //거의 안 바뀌는 엔티티라 2차 캐시에 둔다
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
@@ -14,12 +22,14 @@ import java.util.List;
 public class Team {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq_generator")
+    @SequenceGenerator(name = "team_seq_generator", sequenceName = "team_seq", allocationSize = 50) //pooled: 시퀀스 한번에 id 50개
     @Column(name = "team_id")
     private Long id;
 
     private String name;
 
+    @BatchSize(size = 100) //여러 팀의 members 를 처음 건드릴 때 팀 100개씩 in 절로 한번에 읽는다
     @OneToMany(mappedBy = "team")
     List<Member> members = new ArrayList<>();
 
@@ -27,5 +37,23 @@ public class Team {
         this.name=name;
     }
 
+    /**
+     * members 에 회원을 추가하되 지연 로딩 컬렉션을 초기화하지 않는다.
+     * 영속 상태의 아직 안 읽은 members(inverse PersistentBag)는 add 를 큐에 쌓아뒀다가 나중에 읽을 때 합쳐준다.
+     * 세션이 닫혀서 큐에 쌓을 수도 없으면 (LazyInitializationException) 건너뛴다. (DB 에는 member.team_id 로만 반영되므로 결과는 같다)
+     */
+    public void addMember(Member member) {
+        try {
+            members.add(member);
+        } catch (LazyInitializationException e) {
+            //준영속 팀의 안 읽은 members
+        }
+    }
 
+    //bag 의 remove 는 큐에 쌓이지 않고 컬렉션을 읽으므로 이미 읽은 경우에만 뺀다
+    public void removeMember(Member member) {
+        if (Hibernate.isInitialized(members)) {
+            members.remove(member);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package study.querydsl.entity;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * 팀별 회원 통계 롤업 테이블.
+ * 회원이 추가/수정/삭제될 때 TeamStatsRollupListener 가 트랜잭션 커밋 직전에 갱신한다.
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class TeamStats {
+
+    @Id
+    @Column(name = "team_id")
+    private Long teamId;
+
+    private long memberCount;
+
+    private long ageSum;
+
+    private Integer minAge;
+
+    private Integer maxAge;
+
+    public TeamStats(Long teamId) {
+        this.teamId = teamId;
+    }
+
+    public void change(long memberCount, long ageSum, Integer minAge, Integer maxAge) {
+        this.memberCount = memberCount;
+        this.ageSum = ageSum;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+    }
+}
@@ -0,0 +1,184 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 대량 insert 전용 API. (em.persist/saveAll 반복 대신)
+ * - id 는 엔티티와 같은 pooled 시퀀스 생성기에서 받는다. 시퀀스 호출은 50개(allocationSize)마다 한번
+ * - insert 는 JdbcTemplate batchUpdate 로 batch-size 개씩 묶어서 보낸다
+ * - 영속성 컨텍스트에 올리지 않으므로 건수가 많아도 1차 캐시가 커지지 않는다 (넘긴 엔티티는 준영속 상태로 id 만 채워진다)
+ * 이벤트 리스너를 거치지 않으므로 검색 캐시, 쿼리 캐시, username 인덱스, 팀 통계는 여기서 맞춰준다.
+ * 팀 통계는 member 를 다시 집계하지 않고 이번에 넣은 회원의 팀별 증감(수, 나이 합, 최소/최대)만 더한다.
+ */
+@Slf4j
+@Component
+public class MemberBatchInserter {
+
+    private static final String INSERT_TEAM = "insert into team (team_id, name) values (?, ?)";
+    private static final String INSERT_MEMBER = "insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)";
+    private static final String INSERT_TEAM_STATS = "insert into team_stats (team_id, member_count, age_sum) values (?, 0, 0)";
+    private static final String ADD_TEAM_STATS = "update team_stats set" +
+            " member_count = member_count + ?," +
+            " age_sum = age_sum + ?," +
+            " min_age = case when min_age is null or min_age > ? then ? else min_age end," +
+            " max_age = case when max_age is null or max_age < ? then ? else max_age end" +
+            " where team_id = ?";
+
+    private final EntityManager em;
+    private final JdbcTemplate jdbcTemplate;
+    private final SessionFactoryImplementor sessionFactory;
+    private final MemberSearchCache searchCache;
+    private final MemberUsernameIndex usernameIndex;
+    private final TeamStatsRepository teamStatsRepository;
+    private final int batchSize;
+
+    public MemberBatchInserter(EntityManager em,
+                               EntityManagerFactory emf,
+                               JdbcTemplate jdbcTemplate,
+                               MemberSearchCache searchCache,
+                               MemberUsernameIndex usernameIndex,
+                               TeamStatsRepository teamStatsRepository,
+                               @Value("${member.batch-insert.batch-size:1000}") int batchSize) {
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        this.searchCache = searchCache;
+        this.usernameIndex = usernameIndex;
+        this.teamStatsRepository = teamStatsRepository;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 저장 전인 팀들을 insert 하고 id 를 채운다.
+     */
+    @Transactional
+    public void insertTeams(Collection<Team> teams) {
+        if (teams.isEmpty()) {
+            return;
+        }
+        assignIds(Team.class, teams);
+        jdbcTemplate.batchUpdate(INSERT_TEAM, teams, batchSize, (ps, team) -> {
+            ps.setLong(1, team.getId());
+            ps.setString(2, team.getName());
+        });
+
+        //새 팀이라 회원이 없으므로 빈 통계 row 만 만든다
+        jdbcTemplate.batchUpdate(INSERT_TEAM_STATS, teams, batchSize, (ps, team) -> ps.setLong(1, team.getId()));
+        afterInsert();
+        log.debug("batch inserted {} teams", teams.size());
+    }
+
+    /**
+     * 저장 전인 회원들을 insert 하고 id 를 채운다.
+     * 회원의 팀은 이미 저장되어 id 가 있어야 한다. 아니면 아무것도 넣지 않고 IllegalArgumentException.
+     */
+    @Transactional
+    public void insertMembers(Collection<Member> members) {
+        if (members.isEmpty()) {
+            return;
+        }
+        for (Member member : members) {
+            if (member.getTeam() != null && member.getTeam().getId() == null) {
+                throw new IllegalArgumentException("저장되지 않은 팀의 회원입니다: " + member.getUsername());
+            }
+        }
+        assignIds(Member.class, members);
+        jdbcTemplate.batchUpdate(INSERT_MEMBER, members, batchSize, (ps, member) -> {
+            ps.setLong(1, member.getId());
+            ps.setString(2, member.getUsername());
+            ps.setInt(3, member.getAge());
+            if (member.getTeam() != null) {
+                ps.setLong(4, member.getTeam().getId());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+        });
+
+        //팀 id 순서로 갱신해서 롤업 리스너(TeamStatsRollupListener)와 같은 순서로 row 를 잠근다
+        Map<Long, TeamDelta> deltas = new TreeMap<>();
+        Map<Long, String> usernames = new LinkedHashMap<>();
+        for (Member member : members) {
+            if (member.getTeam() != null) {
+                deltas.computeIfAbsent(member.getTeam().getId(), id -> new TeamDelta()).add(member.getAge());
+            }
+            usernames.put(member.getId(), member.getUsername());
+        }
+        addTeamStats(deltas);
+        usernameIndex.putAfterCommit(usernames);
+        afterInsert();
+        log.debug("batch inserted {} members", members.size());
+    }
+
+    //통계 row 가 없는 팀(롤업 이전에 만들어진 팀 등)은 방금 넣은 회원까지 포함해서 다시 집계한다
+    private void addTeamStats(Map<Long, TeamDelta> deltas) {
+        List<Long> missing = new ArrayList<>();
+        deltas.forEach((teamId, delta) -> {
+            int updated = jdbcTemplate.update(ADD_TEAM_STATS,
+                    delta.count, delta.ageSum, delta.minAge, delta.minAge, delta.maxAge, delta.maxAge, teamId);
+            if (updated == 0) {
+                missing.add(teamId);
+            }
+        });
+        teamStatsRepository.refresh(missing);
+    }
+
+    //엔티티 매핑의 pooled 최적화 생성기를 그대로 쓰므로 em.persist 로 들어가는 id 와 겹치지 않는다
+    private <T> void assignIds(Class<T> entityType, Collection<? extends T> entities) {
+        IdentifierGenerator generator = sessionFactory.getMetamodel().entityPersister(entityType).getIdentifierGenerator();
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        for (T entity : entities) {
+            Long id = (Long) generator.generate(session, entity);
+            if (entity instanceof Member) {
+                ((Member) entity).setId(id);
+            } else {
+                ((Team) entity).setId(id);
+            }
+        }
+    }
+
+    private void afterInsert() {
+        searchCache.evictAll();
+        //JDBC 로 바로 넣었으므로 Hibernate 가 모르는 변경이다. 커밋 후에 쿼리 캐시를 비운다
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sessionFactory.getCache().evictQueryRegions();
+            }
+        });
+    }
+
+    private static class TeamDelta {
+        long count;
+        long ageSum;
+        int minAge = Integer.MAX_VALUE;
+        int maxAge = Integer.MIN_VALUE;
+
+        void add(int age) {
+            count++;
+            ageSum += age;
+            minAge = Math.min(minAge, age);
+            maxAge = Math.max(maxAge, age);
+        }
+    }
+}
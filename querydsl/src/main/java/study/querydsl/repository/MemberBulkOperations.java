@@ -0,0 +1,187 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 벌크 update/delete.
+ *
+ * 한 문장으로 전체를 바꾸면 긴 락이 걸리므로 조건에 맞는 회원을 member_id 순으로 chunk-size 개씩 끊어서
+ * (마지막 id 다음부터 읽는 keyset 방식, id 가 듬성듬성해도 청크가 꽉 찬다)
+ * 청크마다 별도 트랜잭션(REQUIRES_NEW)으로 실행하고 커밋한다.
+ * 청크마다 영속성 컨텍스트를 비우고, 벌크 연산이 건너뛰는 검색 캐시와 팀 통계, username 인덱스도 맞춰준다.
+ *
+ * 청크는 호출하는 쪽 트랜잭션과 상관없이 커밋되어 롤백으로 되돌릴 수 없으므로
+ * 트랜잭션 안에서 부르면 IllegalStateException 을 던진다.
+ */
+@Slf4j
+@Component
+public class MemberBulkOperations {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate chunkTransaction;
+    private final MemberSearchCache searchCache;
+    private final TeamStatsRepository teamStatsRepository;
+    private final MemberUsernameIndex usernameIndex;
+    private final int chunkSize;
+
+    public MemberBulkOperations(EntityManager em,
+                                PlatformTransactionManager transactionManager,
+                                MemberSearchCache searchCache,
+                                TeamStatsRepository teamStatsRepository,
+                                MemberUsernameIndex usernameIndex,
+                                @Value("${member.bulk.chunk-size:1000}") int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalStateException("member.bulk.chunk-size 는 1 이상이어야 합니다: " + chunkSize);
+        }
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.searchCache = searchCache;
+        this.teamStatsRepository = teamStatsRepository;
+        this.usernameIndex = usernameIndex;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 조건에 맞는 회원 나이에 amount 를 더한다. (빼려면 음수)
+     * @return 바뀐 회원 수
+     */
+    public long addAge(MemberSearchCondition condition, int amount) {
+        return executeInChunks("addAge", condition, chunkIds -> queryFactory
+                .update(member)
+                .set(member.age, member.age.add(amount))
+                .where(chunkIds, filters(condition))
+                .execute());
+    }
+
+    /**
+     * 조건에 맞는 회원을 삭제한다.
+     * @return 삭제된 회원 수
+     */
+    public long delete(MemberSearchCondition condition) {
+        return executeInChunks("delete", condition, chunkIds -> {
+            //삭제 이벤트가 안 나가므로 username 인덱스에서는 커밋 후에 직접 뺀다
+            List<Long> memberIds = queryFactory
+                    .select(member.id)
+                    .from(member)
+                    .where(chunkIds, filters(condition))
+                    .fetch();
+            usernameIndex.removeAfterCommit(memberIds);
+
+            return queryFactory
+                    .delete(member)
+                    .where(chunkIds, filters(condition))
+                    .execute();
+        });
+    }
+
+    //청크 쿼리는 id 목록과 함께 조건을 다시 걸어서, 목록을 읽은 뒤 바뀐 회원은 건드리지 않는다
+    private long executeInChunks(String operation, MemberSearchCondition condition, Function<BooleanExpression, Long> chunk) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("member bulk " + operation + " 은 청크마다 따로 커밋하므로 트랜잭션 밖에서 호출해야 합니다.");
+        }
+
+        long total = 0;
+        Long lastId = null;
+        while (true) {
+            List<Long> memberIds = queryFactory
+                    .select(member.id)
+                    .from(member)
+                    .where(idGt(lastId), filters(condition))
+                    .orderBy(member.id.asc())
+                    .limit(chunkSize)
+                    .fetch();
+            if (memberIds.isEmpty()) {
+                break;
+            }
+            lastId = memberIds.get(memberIds.size() - 1);
+
+            BooleanExpression chunkIds = member.id.in(memberIds);
+            Long affected = chunkTransaction.execute(status -> {
+                List<Long> teamIds = queryFactory
+                        .select(member.team.id).distinct()
+                        .from(member)
+                        .where(chunkIds, member.team.isNotNull(), filters(condition))
+                        .fetch();
+
+                long rows = chunk.apply(chunkIds);
+                //벌크 연산은 영속성 컨텍스트를 거치지 않으므로 남아있는 엔티티는 버린다
+                em.clear();
+                if (rows > 0) {
+                    teamStatsRepository.refresh(teamIds);
+                }
+                return rows;
+            });
+            if (affected != null && affected > 0) {
+                searchCache.evictAll();
+                total += affected;
+            }
+            log.debug("member bulk {} [{} ~ {}] {} rows", operation, memberIds.get(0), lastId, affected);
+        }
+        log.info("member bulk {} {} rows", operation, total);
+        return total;
+    }
+
+    private Predicate filters(MemberSearchCondition condition) {
+        return ExpressionUtils.allOf(
+                usernameEq(condition.getUsername()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()),
+                usernameStartsWith(condition.getUsernamePrefix()),
+                usernameContains(condition.getUsernameContains()));
+    }
+
+    private BooleanExpression idGt(Long lastId) {
+        return lastId != null ? member.id.gt(lastId) : null;
+    }
+
+    private BooleanExpression usernameEq(String username) {
+        return StringUtils.hasText(username) ? member.username.eq(username) : null;
+    }
+
+    private BooleanExpression usernameStartsWith(String usernamePrefix) {
+        return StringUtils.hasText(usernamePrefix) ? member.username.startsWith(usernamePrefix) : null;
+    }
+
+    private BooleanExpression usernameContains(String usernameContains) {
+        return StringUtils.hasText(usernameContains) ? member.username.contains(usernameContains) : null;
+    }
+
+    //벌크 연산에는 조인을 걸 수 없어서 서브쿼리로 team 을 거른다
+    private BooleanExpression teamNameEq(String teamName) {
+        return StringUtils.hasText(teamName)
+                ? member.team.id.in(JPAExpressions.select(team.id).from(team).where(team.name.eq(teamName)))
+                : null;
+    }
+
+    private BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    private BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+}
@@ -3,9 +3,12 @@ package study.querydsl.repository;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
@@ -13,23 +16,38 @@ import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
+import study.querydsl.support.MemberQueryMetrics;
 
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
+/**
+ * 조회 메서드는 읽기 전용 트랜잭션에서 실행한다. (flush 생략, 엔티티 스냅샷을 만들지 않음)
+ * 바깥의 읽기/쓰기 트랜잭션에 참여하면 그 트랜잭션을 따르므로, 조회한 엔티티를 고치면 변경 감지로 반영된다.
+ */
 @Repository
+@Transactional(readOnly = true)
 public class MemberJpaRepository {
 
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberQueryMetrics queryMetrics;
+    private final MemberUsernameIndex usernameIndex;
 
-    public MemberJpaRepository(EntityManager em) {
+    public MemberJpaRepository(EntityManager em, MemberQueryMetrics queryMetrics, MemberUsernameIndex usernameIndex) {
         this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.queryMetrics = queryMetrics;
+        this.usernameIndex = usernameIndex;
     }
 
 //    public MemberJpaRepository(EntityManager em, JPAQueryFactory jpaQueryFactory) {
@@ -37,37 +55,48 @@ public class MemberJpaRepository {
 //        this.queryFactory = jpaQueryFactory;
 //    }bean으로 등록해서 이렇게 사용해도된다.
 
+    @Transactional
     public void save(Member member){
         em.persist(member);
     }
 
     public Optional<Member> findById(Long id){
-        Member findMember = em.find(Member.class, id);
-        return Optional.ofNullable(findMember);
+        return queryMetrics.record("MemberJpaRepository.findById", null, () -> {
+            Member findMember = em.find(Member.class, id);
+            return Optional.ofNullable(findMember);
+        });
     }
 
     public List<Member> findAll(){
-        return em.createQuery("select m from Member m",Member.class)
-                .getResultList();
+        return queryMetrics.record("MemberJpaRepository.findAll", null, () ->
+                em.createQuery("select m from Member m",Member.class)
+                        .getResultList());
     }
 
     public List<Member> findAll_Querydsl(){
-        return queryFactory
-                .selectFrom(member)
-                .fetch();
+        return queryMetrics.record("MemberJpaRepository.findAll_Querydsl", null, () ->
+                queryFactory
+                        .selectFrom(member)
+                        .fetch());
     }
 
     public List<Member> findByUsername(String username){
-        return em.createQuery("select m from Member m where m.username = :username",Member.class)
-                .setParameter("username", username)
-                .getResultList();
+        return queryMetrics.record("MemberJpaRepository.findByUsername", null, () ->
+                em.createQuery("select m from Member m where m.username = :username",Member.class)
+                        .setParameter("username", username)
+                        .setHint(QueryHints.HINT_CACHEABLE, true)
+                        .setHint(QueryHints.HINT_CACHE_REGION, MemberRepository.FIND_BY_USERNAME_CACHE_REGION)
+                        .getResultList());
     }
 
     public List<Member> findByUsername_Querydsl(String username){
-        return queryFactory
-                .selectFrom(member)
-                .where(member.username.eq(username))
-                .fetch();
+        return queryMetrics.record("MemberJpaRepository.findByUsername_Querydsl", null, () ->
+                queryFactory
+                        .selectFrom(member)
+                        .where(member.username.eq(username))
+                        .setHint(QueryHints.HINT_CACHEABLE, true)
+                        .setHint(QueryHints.HINT_CACHE_REGION, MemberRepository.FIND_BY_USERNAME_CACHE_REGION)
+                        .fetch());
     }
 
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition){
@@ -85,22 +114,64 @@ public class MemberJpaRepository {
         if(condition.getAgeLoe() != null){
             builder.and(member.age.loe(condition.getAgeLoe()));
         }
+        if(StringUtils.hasText(condition.getUsernamePrefix())){
+            builder.and(member.username.startsWith(condition.getUsernamePrefix()));
+        }
+        if(StringUtils.hasText(condition.getUsernameContains())){
+            builder.and(member.username.contains(condition.getUsernameContains()));
+        }
 
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(builder)
-                .fetch();
+        return queryMetrics.record("MemberJpaRepository.searchByBuilder", condition, () ->
+                queryFactory
+                        .select(new QMemberTeamDto(
+                                member.id.as("memberId"),
+                                member.username,
+                                member.age,
+                                team.id.as("teamId"),
+                                team.name.as("teamName")
+                        ))
+                        .from(member)
+                        .leftJoin(member.team, team)
+                        .where(builder)
+                        .fetch());
     }
 
     public List<MemberTeamDto> searchByWhereParam(MemberSearchCondition condition){
+        //조건 모양별로 미리 만들어 둔 JPQL 에 값만 바인딩한다 (MemberSearchTemplate)
+        return queryMetrics.record("MemberJpaRepository.searchByWhereParam", condition, () -> {
+            Set<Long> usernameIds = usernameIndex.resolve(condition);
+            MemberSearchTemplate template = MemberSearchTemplate.of(condition, usernameIds);
+            return template.bind(em.createQuery(template.getSelectJpql(), MemberTeamDto.class), condition, usernameIds)
+                    .getResultList();
+        });
+    }
+
+    /**
+     * searchByWhereParam 의 MemberSearchTemplate 이전 버전. where 파라미터로 매번 QueryDSL 쿼리를 만든다.
+     * searchByBuilder 와 같은 조건(username 인덱스 없이 like)이라 두 QueryDSL 조건 작성 방식을 비교할 때 쓴다.
+     */
+    public List<MemberTeamDto> searchByWhereParam_Querydsl(MemberSearchCondition condition){
+        return queryMetrics.record("MemberJpaRepository.searchByWhereParam_Querydsl", condition, () ->
+                searchQuery(condition, null).fetch());
+    }
+
+    /**
+     * searchByWhereParam 과 같은 조건의 결과를 List 로 모으지 않고 한 건씩 action 에 넘긴다.
+     * 결과가 아무리 많아도 힙에는 fetch size 만큼의 row 만 올라온다.
+     */
+    public void exportByWhereParam(MemberSearchCondition condition, Consumer<MemberTeamDto> action){
+        queryMetrics.record("MemberJpaRepository.exportByWhereParam", condition, () -> {
+            Set<Long> usernameIds = usernameIndex.resolve(condition);
+            try (Stream<MemberTeamDto> stream = searchQuery(condition, usernameIds)
+                    .setHint(QueryHints.HINT_FETCH_SIZE, EXPORT_FETCH_SIZE)
+                    .stream()) {
+                stream.forEach(action);
+            }
+            return null;
+        });
+    }
+
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition, Set<Long> usernameIds) {
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -115,9 +186,21 @@ public class MemberJpaRepository {
                         usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+                        ageLoe(condition.getAgeLoe()),
+                        usernameMatches(condition, usernameIds)
+                );
+    }
+
+    //인덱스가 찾아준 id 가 있으면 id in, 없으면 like
+    private BooleanExpression usernameMatches(MemberSearchCondition condition, Set<Long> usernameIds) {
+        if (usernameIds != null) {
+            return member.id.in(usernameIds);
+        }
+        BooleanExpression prefix = StringUtils.hasText(condition.getUsernamePrefix())
+                ? member.username.startsWith(condition.getUsernamePrefix()) : null;
+        BooleanExpression contains = StringUtils.hasText(condition.getUsernameContains())
+                ? member.username.contains(condition.getUsernameContains()) : null;
+        return prefix == null ? contains : prefix.and(contains);
     }
 
     private BooleanExpression usernameEq(String username) {
@@ -1,11 +1,21 @@
 package study.querydsl.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import study.querydsl.entity.Member;
 
+import javax.persistence.QueryHint;
+
 import java.util.List;
 
 public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCustom {
+
+    String FIND_BY_USERNAME_CACHE_REGION = "member.findByUsername";
+
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = FIND_BY_USERNAME_CACHE_REGION)
+    })
     List<Member> findByUsername(String username);
 
 
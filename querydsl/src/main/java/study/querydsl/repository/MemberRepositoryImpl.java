@@ -1,84 +1,294 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
+import com.querydsl.core.types.OrderSpecifier;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.support.MemberQueryMetrics;
+import study.querydsl.support.SearchExecutor;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
+/**
+ * 동기 조회는 읽기 전용 트랜잭션에서 실행한다.
+ * 비동기(xxxAsync) 메서드는 호출한 쪽 트랜잭션을 쓰지 않고, 쿼리마다 실행 스레드에서 읽기 전용 트랜잭션을 따로 열어 커넥션을 잡는다.
+ * (datasource.routing.enabled 이면 모두 replica 로 간다)
+ */
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
+    //커서 페이지 크기 상한 (size + 1 overflow, 한번에 너무 많이 읽는 것 방지)
+    static final int MAX_CURSOR_SIZE = 100;
+
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchCache searchCache;
+    private final MemberQueryMetrics queryMetrics;
+    private final SearchExecutor searchExecutor;
+    private final MemberUsernameIndex usernameIndex;
+    private final TransactionTemplate readOnlyTransaction;
 
-    public MemberRepositoryImpl(EntityManager em) {
+    public MemberRepositoryImpl(EntityManager em, MemberSearchCache searchCache, MemberQueryMetrics queryMetrics,
+                                @Qualifier("memberSearchExecutor") SearchExecutor searchExecutor,
+                                MemberUsernameIndex usernameIndex,
+                                PlatformTransactionManager transactionManager) {
+        this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.searchCache = searchCache;
+        this.queryMetrics = queryMetrics;
+        this.searchExecutor = searchExecutor;
+        this.usernameIndex = usernameIndex;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
 
     @Override
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+        return queryMetrics.record("MemberRepository.search", condition, () ->
+                searchCache.get(MemberSearchKey.of("search", condition),
+                        () -> Collections.unmodifiableList(fetchSearch(condition))));
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> result = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
+        return queryMetrics.record("MemberRepository.searchPageSimple", condition, () ->
+                searchCache.get(MemberSearchKey.of("searchPageSimple", condition, pageable),
+                        () -> fetchPageSimple(condition, pageable)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        return queryMetrics.record("MemberRepository.searchPageComplex", condition, () ->
+                searchCache.get(MemberSearchKey.of("searchPageComplex", condition, pageable),
+                        () -> fetchPageComplex(condition, pageable)));
+    }
+
+    @Override
+    public CompletableFuture<List<MemberTeamDto>> searchAsync(MemberSearchCondition condition) {
+        return CompletableFuture.supplyAsync(() ->
+                readOnlyTransaction.execute(status -> search(condition)), searchExecutor);
+    }
+
+    /**
+     * content 쿼리와 count 쿼리를 검색 실행기에서 각자의 읽기 전용 트랜잭션(커넥션)으로 동시에 실행하고 합친다.
+     */
+    @Override
+    public CompletableFuture<Page<MemberTeamDto>> searchPageSimpleAsync(MemberSearchCondition condition, Pageable pageable) {
+        MemberSearchKey key = MemberSearchKey.of("searchPageSimple", condition, pageable);
+        return searchPageInParallel("MemberRepository.searchPageSimpleAsync", key, condition, pageable,
+                (content, total) -> new PageImpl<>(content, pageable, total));
+    }
+
+    /**
+     * 첫 페이지는 content 가 다 찼을 때만 count 가 필요하므로, content 를 읽은 뒤 필요할 때만 count 를 실행한다. (searchPageComplex 와 같음)
+     * 두 번째 페이지부터는 count 를 생략할 수 있는지 content 를 읽기 전에는 모르므로 searchPageSimpleAsync 처럼 동시에 실행한다.
+     */
+    @Override
+    public CompletableFuture<Page<MemberTeamDto>> searchPageComplexAsync(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged() || pageable.getOffset() == 0) {
+            return CompletableFuture.supplyAsync(() ->
+                    readOnlyTransaction.execute(status -> searchPageComplex(condition, pageable)), searchExecutor);
+        }
+        MemberSearchKey key = MemberSearchKey.of("searchPageComplex", condition, pageable);
+        return searchPageInParallel("MemberRepository.searchPageComplexAsync", key, condition, pageable,
+                (content, total) -> PageableExecutionUtils.getPage(content, pageable, () -> total));
+    }
+
+    private CompletableFuture<Page<MemberTeamDto>> searchPageInParallel(
+            String operation, MemberSearchKey key, MemberSearchCondition condition, Pageable pageable,
+            BiFunction<List<MemberTeamDto>, Long, Page<MemberTeamDto>> toPage) {
+        Page<MemberTeamDto> cached = searchCache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long loadedAt = searchCache.generation();
+        Set<Long> usernameIds = usernameIndex.resolve(condition);
+
+        CompletableFuture<List<MemberTeamDto>> content = CompletableFuture.supplyAsync(() ->
+                queryMetrics.record(operation + ".content", condition, () ->
+                        readOnlyTransaction.execute(status -> fetchPageContent(condition, usernameIds, pageable))),
+                searchExecutor);
+        CompletableFuture<Long> total = CompletableFuture.supplyAsync(() ->
+                queryMetrics.record(operation + ".count", condition, () -> {
+                    queryMetrics.countQueryExecuted();
+                    return readOnlyTransaction.execute(status -> fetchCount(condition, usernameIds));
+                }), searchExecutor);
+
+        return content.thenCombine(total, (list, count) -> {
+            Page<MemberTeamDto> page = toPage.apply(list, count);
+            searchCache.put(key, page, loadedAt);
+            return page;
+        });
+    }
+
+    private List<MemberTeamDto> fetchSearch(MemberSearchCondition condition) {
+        Set<Long> usernameIds = usernameIndex.resolve(condition);
+        MemberSearchTemplate template = MemberSearchTemplate.of(condition, usernameIds);
+        return template.bind(em.createQuery(template.getSelectJpql(), MemberTeamDto.class), condition, usernameIds)
+                .getResultList();
+    }
+
+    private Page<MemberTeamDto> fetchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+        Set<Long> usernameIds = usernameIndex.resolve(condition);
+        List<MemberTeamDto> content = fetchPageContent(condition, usernameIds, pageable);
+
+        queryMetrics.countQueryExecuted();
+        long total = fetchCount(condition, usernameIds);
+
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private Page<MemberTeamDto> fetchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        Set<Long> usernameIds = usernameIndex.resolve(condition);
+        List<MemberTeamDto> content = fetchPageContent(condition, usernameIds, pageable);
+
+        //첫 페이지가 다 안 찼거나 마지막 페이지면 count 쿼리를 생략한다
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            queryMetrics.countQueryExecuted();
+            return fetchCount(condition, usernameIds);
+        });
+    }
+
+    //usernameIds : MemberUsernameIndex.resolve 결과, null 이면 username like 로 검색
+    private List<MemberTeamDto> fetchPageContent(MemberSearchCondition condition, Set<Long> usernameIds, Pageable pageable) {
+        MemberSearchTemplate template = MemberSearchTemplate.of(condition, usernameIds);
+        return template.bind(em.createQuery(template.getSelectJpql(), MemberTeamDto.class), condition, usernameIds)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+    }
+
+    /**
+     * 검색 조건과 같은 where 절의 select count(m.id) 쿼리.
+     * 정렬은 붙이지 않고, team 조인은 팀 이름 조건이 있을 때만 건다.
+     * (deprecated 된 fetchCount/fetchResults 대신 사용)
+     */
+    private long fetchCount(MemberSearchCondition condition, Set<Long> usernameIds) {
+        MemberSearchTemplate template = MemberSearchTemplate.of(condition, usernameIds);
+        return template.bind(em.createQuery(template.getCountJpql(), Long.class), condition, usernameIds)
+                .getSingleResult();
+    }
+
+    /**
+     * Team 까지 채운 Member 엔티티 페이지.
+     * 먼저 검색 조건으로 한 페이지의 id 만 고르고, 그 id 들을 in 절로 team 과 fetch join 해서 읽는다.
+     * (fetch join 에 바로 페이징을 걸지 않으므로 컬렉션을 조인하게 되더라도 메모리 페이징이 생기지 않는다)
+     * 정렬은 pageable 의 id, username, age 만 받고 두 쿼리에 똑같이 건다. 그 밖의 속성은 IllegalArgumentException.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Member> searchMembers(MemberSearchCondition condition, Pageable pageable) {
+        return queryMetrics.record("MemberRepository.searchMembers", condition,
+                () -> fetchMembers(condition, pageable));
+    }
+
+    private Page<Member> fetchMembers(MemberSearchCondition condition, Pageable pageable) {
+        OrderSpecifier<?>[] orders = memberOrders(pageable.getSort());
+        Set<Long> usernameIds = usernameIndex.resolve(condition);
+
+        JPAQuery<Long> idQuery = queryFactory
+                .select(member.id)
+                .from(member);
+        if (StringUtils.hasText(condition.getTeamName())) {
+            idQuery.join(member.team, team);
+        }
+        List<Long> ids = idQuery
                 .where(
                         usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
+                        ageLoe(condition.getAgeLoe()),
+                        usernameMatches(condition, usernameIds)
                 )
+                .orderBy(orders)
                 .offset(pageable.getOffset())
                 .limit(pageable.getPageSize())
-                .fetchResults();
+                .fetch();
 
-        List<MemberTeamDto> content = result.getResults();
-        long total = result.getTotal();
+        List<Member> content = ids.isEmpty() ? Collections.emptyList() : queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.id.in(ids))
+                .orderBy(orders)
+                .fetch();
 
-        return new PageImpl<>(content,pageable,total);
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            queryMetrics.countQueryExecuted();
+            return fetchCount(condition, usernameIds);
+        });
+    }
 
+    //같은 값이 여러 건이어도 페이지 경계가 흔들리지 않게 id 정렬을 마지막에 붙인다
+    private static OrderSpecifier<?>[] memberOrders(Sort sort) {
+        List<OrderSpecifier<?>> orders = new ArrayList<>();
+        boolean idOrdered = false;
+        for (Sort.Order order : sort) {
+            ComparableExpressionBase<?> path = memberSortPath(order.getProperty());
+            orders.add(order.isAscending() ? path.asc() : path.desc());
+            idOrdered |= path == member.id;
+        }
+        if (!idOrdered) {
+            orders.add(member.id.asc());
+        }
+        return orders.toArray(new OrderSpecifier<?>[0]);
+    }
 
+    private static ComparableExpressionBase<?> memberSortPath(String property) {
+        switch (property) {
+            case "id":
+                return member.id;
+            case "username":
+                return member.username;
+            case "age":
+                return member.age;
+            default:
+                throw new IllegalArgumentException("정렬할 수 없는 속성입니다: " + property);
+        }
     }
 
+    //offset 없이 마지막으로 본 memberId 다음부터 size+1개를 읽어서 다음 페이지 유무를 판단한다
+    //size 는 1 ~ MAX_CURSOR_SIZE 로 맞춘다
     @Override
-    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Slice<MemberTeamDto> searchSliceByCursor(MemberSearchCondition condition, Long lastMemberId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_SIZE));
+        return queryMetrics.record("MemberRepository.searchSliceByCursor", condition,
+                () -> fetchSliceByCursor(condition, lastMemberId, pageSize));
+    }
+
+    private Slice<MemberTeamDto> fetchSliceByCursor(MemberSearchCondition condition, Long lastMemberId, int size) {
+        Set<Long> usernameIds = usernameIndex.resolve(condition);
+
         List<MemberTeamDto> content = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -90,28 +300,39 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
+                        memberIdGt(lastMemberId),
                         usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
+                        ageLoe(condition.getAgeLoe()),
+                        usernameMatches(condition, usernameIds)
                 )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
+                .orderBy(member.id.asc())
+                .limit(size + 1)
                 .fetch();
 
-        long total = queryFactory
-                .select(member)
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetchCount();
+        boolean hasNext = content.size() > size;
+        if (hasNext) {
+            content.remove(size);
+        }
+
+        return new SliceImpl<>(content, PageRequest.of(0, size), hasNext);
+    }
+
+    private BooleanExpression memberIdGt(Long lastMemberId) {
+        return lastMemberId != null ? member.id.gt(lastMemberId) : null;
+    }
 
-        return new PageImpl<>(content,pageable,total);
+    //인덱스가 찾아준 id 가 있으면 id in, 없으면 like
+    private BooleanExpression usernameMatches(MemberSearchCondition condition, Set<Long> usernameIds) {
+        if (usernameIds != null) {
+            return member.id.in(usernameIds);
+        }
+        BooleanExpression prefix = StringUtils.hasText(condition.getUsernamePrefix())
+                ? member.username.startsWith(condition.getUsernamePrefix()) : null;
+        BooleanExpression contains = StringUtils.hasText(condition.getUsernameContains())
+                ? member.username.contains(condition.getUsernameContains()) : null;
+        return prefix == null ? contains : prefix.and(contains);
     }
 
     private BooleanExpression usernameEq(String username) {
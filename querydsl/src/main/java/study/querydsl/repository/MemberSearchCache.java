@@ -0,0 +1,130 @@
+package study.querydsl.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.support.ReplicaLagWindow;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * MemberSearchCondition 검색 결과 캐시.
+ * 크기 제한은 결과 row 수(weight) 기준이고, 넘치면 Caffeine(W-TinyLFU)이 알아서 내보낸다.
+ *
+ * 읽기/쓰기 트랜잭션 안에서는 캐시를 쓰지 않는다.
+ * (캐시 hit 는 auto flush 를 건너뛰어 자기 변경이 안 보이고, miss 면 커밋 전 row 가 공유 캐시에 들어간다)
+ * 조회(loader)는 Caffeine 매핑 함수 밖에서 실행하고, 조회하는 동안 evictAll 이 있었으면 결과를 넣지 않는다.
+ * replica 라우팅 중에는 쓰기 커밋 뒤 replica 가 따라오기 전(ReplicaLagWindow)에 시작한 조회 결과도 넣지 않는다.
+ * (evictAll 뒤에 다시 채워지는 것이라 generation 으로는 못 거른다)
+ */
+@Component
+public class MemberSearchCache {
+
+    private static final long NOT_CACHEABLE = -1;
+
+    private final Cache<MemberSearchKey, Object> cache;
+    //evictAll 때마다 올린다. 조회 시작 때 값과 다르면 그 사이에 바뀐 것이므로 저장하지 않는다
+    private final AtomicLong generation = new AtomicLong();
+    //replica 라우팅을 쓰지 않으면 null
+    private final ReplicaLagWindow lagWindow;
+
+    public MemberSearchCache(@Value("${member.search.cache.maximum-weight:100000}") long maximumWeight,
+                             @Value("${member.search.cache.ttl-seconds:30}") long ttlSeconds,
+                             ObjectProvider<ReplicaLagWindow> lagWindow) {
+        this.lagWindow = lagWindow.getIfAvailable();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((MemberSearchKey key, Object value) -> weigh(value))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(MemberSearchKey key, Supplier<T> loader) {
+        if (!isCacheable()) {
+            return loader.get();
+        }
+        T cached = (T) cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedAt = generation();
+        T value = loader.get();
+        put(key, value, loadedAt);
+        return value;
+    }
+
+    //loader 를 한 번에 넘길 수 없을 때는 getIfPresent, generation, put(key, value, loadedAt) 순서로 쓴다
+    @SuppressWarnings("unchecked")
+    public <T> T getIfPresent(MemberSearchKey key) {
+        return isCacheable() ? (T) cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * 조회를 시작하기 전에 받아두고 put 에 넘긴다.
+     * replica 가 아직 따라오지 못했을 수 있으면 NOT_CACHEABLE 을 돌려주어 put 이 저장하지 않게 한다.
+     */
+    public long generation() {
+        if (lagWindow != null && lagWindow.isOpen()) {
+            return NOT_CACHEABLE;
+        }
+        return generation.get();
+    }
+
+    /**
+     * loadedAt 이후에 evictAll 이 있었으면 (조회 도중 데이터가 바뀌었으면) 저장하지 않는다.
+     */
+    public void put(MemberSearchKey key, Object value, long loadedAt) {
+        if (value == null || loadedAt == NOT_CACHEABLE || !isCacheable()) {
+            return;
+        }
+        //evictAll 은 generation 을 먼저 올리고 비우므로, 같은 키의 compute 안에서 확인하면 지난 결과가 다시 들어가지 않는다
+        cache.asMap().compute(key, (k, old) -> generation.get() == loadedAt ? value : old);
+    }
+
+    /**
+     * 캐시를 바로 비우고, 트랜잭션 안이라면 커밋/롤백 후에 한번 더 비운다.
+     * (트랜잭션 도중에 다시 채워진 아직 커밋 안 된 결과가 남지 않게)
+     */
+    public void evictAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MemberSearchCache.this);
+                generation.incrementAndGet();
+                cache.invalidateAll();
+            }
+        });
+    }
+
+    private static boolean isCacheable() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof Page) {
+            return ((Page<?>) value).getNumberOfElements() + 1;
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size() + 1;
+        }
+        return 1;
+    }
+}
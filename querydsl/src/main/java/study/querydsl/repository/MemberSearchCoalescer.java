@@ -0,0 +1,70 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.support.SingleFlight;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 같은 조건(MemberSearchKey)의 검색이 동시에 여러 번 들어오면 DB 쿼리는 한 번만 실행하고 결과를 나눠 준다.
+ * 실행 중인 쿼리에만 합류하므로 캐시처럼 오래된 결과를 받을 일은 없다.
+ * - member.search.coalesced : 다른 요청의 쿼리에 합류한 횟수 (operation 태그)
+ * - member.search.inflight : 지금 실행 중인 검색 키 수
+ *
+ * 트랜잭션 안에서 부르면 합치지 않는다. (그 트랜잭션에서 바꾼 내용이 안 보이는 결과를 받을 수 있으므로)
+ */
+@Component
+public class MemberSearchCoalescer {
+
+    private final SingleFlight<MemberSearchKey> singleFlight = new SingleFlight<>();
+    private final Map<String, Counter> coalescedCounters = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+    private final boolean enabled;
+
+    public MemberSearchCoalescer(MeterRegistry registry,
+                                 @Value("${member.search.coalescing.enabled:true}") boolean enabled) {
+        this.registry = registry;
+        this.enabled = enabled;
+        Gauge.builder("member.search.inflight", singleFlight, SingleFlight::inFlightCount)
+                .register(registry);
+    }
+
+    /**
+     * 결과는 합류한 요청끼리 같은 객체를 나눠 가지므로 query 는 바꾸지 않을 결과(불변 리스트 등)를 돌려줘야 한다.
+     */
+    public <T> T search(String operation, MemberSearchCondition condition, Supplier<T> query) {
+        if (!canCoalesce()) {
+            return query.get();
+        }
+        return singleFlight.execute(MemberSearchKey.of(operation, condition), query, coalesced(operation));
+    }
+
+    public <T> CompletableFuture<T> searchAsync(String operation, MemberSearchCondition condition, Pageable pageable,
+                                                Supplier<CompletableFuture<T>> query) {
+        if (!canCoalesce()) {
+            return query.get();
+        }
+        return singleFlight.executeAsync(MemberSearchKey.of(operation, condition, pageable), query, coalesced(operation));
+    }
+
+    private boolean canCoalesce() {
+        return enabled && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private Runnable coalesced(String operation) {
+        Counter counter = coalescedCounters.computeIfAbsent(operation, op -> Counter.builder("member.search.coalesced")
+                .tag("operation", op)
+                .register(registry));
+        return counter::increment;
+    }
+}
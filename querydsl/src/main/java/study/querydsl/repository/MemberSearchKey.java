@@ -0,0 +1,50 @@
+package study.querydsl.repository;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+/**
+ * 검색 결과 캐시 키.
+ * where 절에서 무시되는 조건(빈 문자열)은 null 로 맞춰서 같은 쿼리는 같은 키가 되게 한다.
+ */
+@EqualsAndHashCode
+@ToString
+public final class MemberSearchKey {
+
+    private final String operation;
+    private final String username;
+    private final String usernamePrefix;
+    private final String usernameContains;
+    private final String teamName;
+    private final Integer ageGoe;
+    private final Integer ageLoe;
+    private final Long offset;
+    private final Integer pageSize;
+    private final Sort sort;
+
+    private MemberSearchKey(String operation, MemberSearchCondition condition, Pageable pageable) {
+        this.operation = operation;
+        this.username = StringUtils.hasText(condition.getUsername()) ? condition.getUsername() : null;
+        this.usernamePrefix = StringUtils.hasText(condition.getUsernamePrefix()) ? condition.getUsernamePrefix() : null;
+        this.usernameContains = StringUtils.hasText(condition.getUsernameContains()) ? condition.getUsernameContains() : null;
+        this.teamName = StringUtils.hasText(condition.getTeamName()) ? condition.getTeamName() : null;
+        this.ageGoe = condition.getAgeGoe();
+        this.ageLoe = condition.getAgeLoe();
+        boolean paged = pageable != null && pageable.isPaged();
+        this.offset = paged ? pageable.getOffset() : null;
+        this.pageSize = paged ? pageable.getPageSize() : null;
+        this.sort = paged ? pageable.getSort() : null;
+    }
+
+    public static MemberSearchKey of(String operation, MemberSearchCondition condition) {
+        return new MemberSearchKey(operation, condition, null);
+    }
+
+    public static MemberSearchKey of(String operation, MemberSearchCondition condition, Pageable pageable) {
+        return new MemberSearchKey(operation, condition, pageable);
+    }
+}
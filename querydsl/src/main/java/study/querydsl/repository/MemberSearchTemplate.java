@@ -0,0 +1,168 @@
+package study.querydsl.repository;
+
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+import javax.persistence.Query;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * MemberSearchCondition 검색 JPQL 템플릿.
+ * 검색 조건의 입력 여부(bitmask)로 만들 수 있는 모든 모양의 JPQL 을 미리 만들어 두고,
+ * 호출할 때는 파라미터 값만 바인딩한다.
+ * usernamePrefix/usernameContains 는 MemberUsernameIndex 가 id 로 바꿔주면 m.id in (:memberIds),
+ * 아니면 like 로 들어간다.
+ * 매번 같은 문자열이 나가므로 QueryDSL 직렬화가 없고 Hibernate 도 QueryPlanCache 에서 파싱 결과를 재사용한다.
+ */
+final class MemberSearchTemplate {
+
+    private static final int USERNAME = 1;
+    private static final int TEAM_NAME = 1 << 1;
+    private static final int AGE_GOE = 1 << 2;
+    private static final int AGE_LOE = 1 << 3;
+    private static final int USERNAME_PREFIX = 1 << 4;
+    private static final int USERNAME_CONTAINS = 1 << 5;
+    private static final int MEMBER_IDS = 1 << 6;
+
+    private static final char LIKE_ESCAPE = '!';
+
+    private static final MemberSearchTemplate[] TEMPLATES = new MemberSearchTemplate[1 << 7];
+
+    static {
+        for (int mask = 0; mask < TEMPLATES.length; mask++) {
+            TEMPLATES[mask] = new MemberSearchTemplate(mask);
+        }
+    }
+
+    private final int mask;
+    private final String selectJpql;
+    private final String countJpql;
+
+    private MemberSearchTemplate(int mask) {
+        this.mask = mask;
+        String where = where(mask);
+        //팀 이름 조건이 있으면 어차피 팀 없는 회원은 빠지므로 inner join 으로 해서 DB 가 team(name) 인덱스부터 읽을 수 있게 한다
+        this.selectJpql = "select new study.querydsl.dto.MemberTeamDto(m.id, m.username, m.age, t.id, t.name)"
+                + " from Member m" + ((mask & TEAM_NAME) != 0 ? " join" : " left join") + " m.team t" + where;
+        //count 는 팀 이름 조건이 있을 때만 team 을 조인한다
+        this.countJpql = "select count(m.id) from Member m"
+                + ((mask & TEAM_NAME) != 0 ? " join m.team t" : "") + where;
+    }
+
+    static MemberSearchTemplate of(MemberSearchCondition condition) {
+        return of(condition, null);
+    }
+
+    /**
+     * @param usernameIds MemberUsernameIndex.resolve 결과 (null 이면 username like 조건으로)
+     */
+    static MemberSearchTemplate of(MemberSearchCondition condition, Set<Long> usernameIds) {
+        return TEMPLATES[mask(condition, usernameIds)];
+    }
+
+    String getSelectJpql() {
+        return selectJpql;
+    }
+
+    String getCountJpql() {
+        return countJpql;
+    }
+
+    /**
+     * 이 템플릿에 있는 파라미터만 condition 값으로 채운다.
+     */
+    <Q extends Query> Q bind(Q query, MemberSearchCondition condition) {
+        return bind(query, condition, null);
+    }
+
+    <Q extends Query> Q bind(Q query, MemberSearchCondition condition, Set<Long> usernameIds) {
+        if ((mask & USERNAME) != 0) {
+            query.setParameter("username", condition.getUsername());
+        }
+        if ((mask & TEAM_NAME) != 0) {
+            query.setParameter("teamName", condition.getTeamName());
+        }
+        if ((mask & AGE_GOE) != 0) {
+            query.setParameter("ageGoe", condition.getAgeGoe());
+        }
+        if ((mask & AGE_LOE) != 0) {
+            query.setParameter("ageLoe", condition.getAgeLoe());
+        }
+        if ((mask & USERNAME_PREFIX) != 0) {
+            query.setParameter("usernamePrefix", escapeLike(condition.getUsernamePrefix()) + "%");
+        }
+        if ((mask & USERNAME_CONTAINS) != 0) {
+            query.setParameter("usernameContains", "%" + escapeLike(condition.getUsernameContains()) + "%");
+        }
+        if ((mask & MEMBER_IDS) != 0) {
+            query.setParameter("memberIds", usernameIds);
+        }
+        return query;
+    }
+
+    //usernameEq, teamNameEq, ageGoe, ageLoe ... 와 같은 기준 (빈 문자열은 조건 없음)
+    private static int mask(MemberSearchCondition condition, Set<Long> usernameIds) {
+        int mask = 0;
+        if (StringUtils.hasText(condition.getUsername())) {
+            mask |= USERNAME;
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            mask |= TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            mask |= AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            mask |= AGE_LOE;
+        }
+        if (usernameIds != null) {
+            mask |= MEMBER_IDS;
+        } else {
+            if (StringUtils.hasText(condition.getUsernamePrefix())) {
+                mask |= USERNAME_PREFIX;
+            }
+            if (StringUtils.hasText(condition.getUsernameContains())) {
+                mask |= USERNAME_CONTAINS;
+            }
+        }
+        return mask;
+    }
+
+    private static String where(int mask) {
+        StringJoiner where = new StringJoiner(" and ", " where ", "").setEmptyValue("");
+        if ((mask & USERNAME) != 0) {
+            where.add("m.username = :username");
+        }
+        if ((mask & TEAM_NAME) != 0) {
+            where.add("t.name = :teamName");
+        }
+        if ((mask & AGE_GOE) != 0) {
+            where.add("m.age >= :ageGoe");
+        }
+        if ((mask & AGE_LOE) != 0) {
+            where.add("m.age <= :ageLoe");
+        }
+        if ((mask & USERNAME_PREFIX) != 0) {
+            where.add("m.username like :usernamePrefix escape '" + LIKE_ESCAPE + "'");
+        }
+        if ((mask & USERNAME_CONTAINS) != 0) {
+            where.add("m.username like :usernameContains escape '" + LIKE_ESCAPE + "'");
+        }
+        if ((mask & MEMBER_IDS) != 0) {
+            where.add("m.id in :memberIds");
+        }
+        return where.toString();
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,268 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * usernamePrefix/usernameContains 검색용 메모리 인덱스. (username -> member_id)
+ * - prefix : username 정렬 맵(ConcurrentSkipListMap)의 구간 조회
+ * - contains : 3글자 단위(trigram) 역색인으로 후보를 줄이고 실제 문자열로 한번 더 확인
+ *
+ * 커밋된 변경만 반영한다. (MemberUsernameIndexListener, 벌크 삭제는 removeAfterCommit)
+ * 결과 id 는 DB 에서 나머지 조건과 같이 다시 걸러지므로, 지워진 회원 id 가 남아 있어도 결과는 맞다.
+ * 반대로 아직 로딩 전이거나 후보가 너무 많거나 후보가 하나도 없으면 null 을 돌려주고 DB like 검색으로 넘긴다.
+ * (이 인덱스가 모르는 회원이 있을 수 있으므로 "없음" 은 믿지 않는다)
+ * 읽기/쓰기 트랜잭션 안에서도 아직 커밋 안 된 자기 변경이 보이도록 쓰지 않는다.
+ *
+ * 인덱스는 이 애플리케이션 인스턴스의 변경만 바로 반영한다. 여러 대로 띄우거나 SQL 로 직접 고친 회원은
+ * refresh-interval 마다 DB 를 다시 읽어서 맞춘다. (그 사이에는 인덱스에 없는 회원이 결과에서 빠질 수 있다)
+ */
+@Slf4j
+@Component
+public class MemberUsernameIndex {
+
+    private static final int GRAM = 3;
+
+    private final EntityManager em;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxIds;
+
+    private final ConcurrentSkipListMap<String, Set<Long>> idsByUsername = new ConcurrentSkipListMap<>();
+    private final Map<Long, String> usernameById = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> idsByTrigram = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public MemberUsernameIndex(EntityManager em,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${member.search.username-index.max-ids:1000}") int maxIds) {
+        this.em = em;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxIds = maxIds;
+    }
+
+    //기동 시 이미 있는 회원을 한번 읽어서 채운다
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long count = reload();
+        ready = true;
+        log.info("member username index loaded: {} members", count);
+    }
+
+    /**
+     * 다른 인스턴스나 SQL 로 바뀐 회원을 반영한다. 지워진 회원은 빼지 않는다. (DB 에서 다시 걸러진다)
+     */
+    @Scheduled(initialDelayString = "${member.search.username-index.refresh-interval:PT5M}",
+            fixedDelayString = "${member.search.username-index.refresh-interval:PT5M}")
+    public void refresh() {
+        if (!ready) {
+            return;
+        }
+        log.debug("member username index refreshed: {} members", reload());
+    }
+
+    private long reload() {
+        return readOnlyTransaction.execute(status -> {
+            try (Stream<Object[]> rows = em.createQuery("select m.id, m.username from Member m", Object[].class)
+                    .setHint(QueryHints.HINT_FETCH_SIZE, 1000)
+                    .getResultStream()) {
+                long[] loaded = {0};
+                rows.forEach(row -> {
+                    put((Long) row[0], (String) row[1]);
+                    loaded[0]++;
+                });
+                return loaded[0];
+            }
+        });
+    }
+
+    /**
+     * condition 의 usernamePrefix/usernameContains 에 맞는 member_id. 비어 있는 Set 은 돌려주지 않는다.
+     * 두 조건이 다 없거나 인덱스로 답할 수 없으면 null (호출하는 쪽에서 like 로 검색).
+     */
+    public Set<Long> resolve(MemberSearchCondition condition) {
+        String prefix = condition.getUsernamePrefix();
+        String contains = condition.getUsernameContains();
+        boolean hasPrefix = StringUtils.hasText(prefix);
+        boolean hasContains = StringUtils.hasText(contains);
+        if (!ready || (!hasPrefix && !hasContains) || inReadWriteTransaction()) {
+            return null;
+        }
+
+        Set<Long> ids = find(prefix, contains, hasPrefix, hasContains);
+        return ids == null || ids.isEmpty() ? null : ids;
+    }
+
+    private Set<Long> find(String prefix, String contains, boolean hasPrefix, boolean hasContains) {
+        //한쪽 조건만 인덱스로 찾았으면 나머지 조건은 그 후보의 username 으로 직접 확인한다
+        Set<Long> ids = hasPrefix ? findByPrefix(prefix) : null;
+        if (ids != null) {
+            if (hasContains) {
+                ids.removeIf(id -> !usernameMatches(id, name -> name.contains(contains)));
+            }
+            return ids;
+        }
+        ids = hasContains ? findByContains(contains) : null;
+        if (ids != null && hasPrefix) {
+            ids.removeIf(id -> !usernameMatches(id, name -> name.startsWith(prefix)));
+        }
+        return ids;
+    }
+
+    public void put(Long memberId, String username) {
+        String previous = username != null ? usernameById.put(memberId, username) : usernameById.remove(memberId);
+        if (previous != null) {
+            if (previous.equals(username)) {
+                return;
+            }
+            unindex(memberId, previous);
+        }
+        if (username != null) {
+            addTo(idsByUsername, username, memberId);
+            for (String trigram : trigrams(username)) {
+                addTo(idsByTrigram, trigram, memberId);
+            }
+        }
+    }
+
+    public void remove(Long memberId) {
+        String previous = usernameById.remove(memberId);
+        if (previous != null) {
+            unindex(memberId, previous);
+        }
+    }
+
+    /**
+     * 벌크 삭제처럼 이벤트가 안 나가는 경우에 쓴다. 트랜잭션 안이면 커밋 후에 지운다.
+     */
+    public void removeAfterCommit(Collection<Long> memberIds) {
+        if (!memberIds.isEmpty()) {
+            afterCommit(() -> memberIds.forEach(this::remove));
+        }
+    }
+
+    /**
+     * JDBC 로 바로 넣은 회원(MemberBatchInserter)을 반영한다. 트랜잭션 안이면 커밋 후에 넣는다.
+     */
+    public void putAfterCommit(Map<Long, String> usernames) {
+        if (!usernames.isEmpty()) {
+            afterCommit(() -> usernames.forEach(this::put));
+        }
+    }
+
+    private static boolean inReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private Set<Long> findByPrefix(String prefix) {
+        NavigableMap<String, Set<Long>> range = idsByUsername.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        Set<Long> ids = new HashSet<>();
+        for (Set<Long> memberIds : range.values()) {
+            ids.addAll(memberIds);
+            if (ids.size() > maxIds) {
+                return null;
+            }
+        }
+        return ids;
+    }
+
+    //3글자보다 짧으면 거의 모든 회원이 후보라 인덱스를 쓰지 않는다
+    private Set<Long> findByContains(String contains) {
+        if (contains.length() < GRAM) {
+            return null;
+        }
+        Set<Long> smallest = null;
+        for (String trigram : trigrams(contains)) {
+            Set<Long> posting = idsByTrigram.get(trigram);
+            if (posting == null) {
+                return new HashSet<>();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+
+        Set<Long> ids = new HashSet<>();
+        for (Long id : smallest) {
+            if (usernameMatches(id, name -> name.contains(contains))) {
+                ids.add(id);
+                if (ids.size() > maxIds) {
+                    return null;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private boolean usernameMatches(Long memberId, Predicate<String> matcher) {
+        String username = usernameById.get(memberId);
+        return username != null && matcher.test(username);
+    }
+
+    private void unindex(Long memberId, String username) {
+        removeFrom(idsByUsername, username, memberId);
+        for (String trigram : trigrams(username)) {
+            removeFrom(idsByTrigram, trigram, memberId);
+        }
+    }
+
+    //빈 Set 을 지우는 removeFrom 과 겹쳐도 id 가 사라지지 않게 compute 안에서 넣는다
+    private static void addTo(Map<String, Set<Long>> index, String key, Long memberId) {
+        index.compute(key, (k, ids) -> {
+            Set<Long> target = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            target.add(memberId);
+            return target;
+        });
+    }
+
+    private static void removeFrom(Map<String, Set<Long>> index, String key, Long memberId) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(memberId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Set<String> trigrams(String value) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            trigrams.add(value.substring(i, i + GRAM));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,40 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.stereotype.Repository;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@Repository
+public class TeamRepository {
+
+    private final JPAQueryFactory queryFactory;
+
+    public TeamRepository(EntityManager em) {
+        this.queryFactory = new JPAQueryFactory(em);
+    }
+
+    /**
+     * 팀과 팀의 회원 컬렉션을 한 번의 쿼리로 읽는다. (team 수와 상관없이 SQL 1번)
+     * 컬렉션 fetch join 이라 페이징은 걸지 않는다. 페이징이 필요하면 팀만 읽고 @BatchSize 로 회원을 채운다.
+     */
+    public List<Team> findTeamsWithMembers(Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return queryFactory
+                .selectFrom(team)
+                .distinct()
+                .leftJoin(team.members, member).fetchJoin()
+                .where(team.id.in(teamIds))
+                .orderBy(team.id.asc())
+                .fetch();
+    }
+}
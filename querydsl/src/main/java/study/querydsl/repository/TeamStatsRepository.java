@@ -0,0 +1,163 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.QTeamStatsDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.TeamStats;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.entity.QTeamStats.teamStats;
+
+/**
+ * 팀별 회원 수/평균/최소/최대 나이.
+ * 매번 member 전체를 group by 하지 않고 미리 집계된 team_stats 를 읽는다. (팀 수만큼의 row)
+ */
+@Repository
+public class TeamStatsRepository {
+
+    private static final String INSERT_EMPTY = "insert into team_stats (team_id, member_count, age_sum) values (?, 0, 0)";
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+
+    public TeamStatsRepository(EntityManager em, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public List<TeamStatsDto> findAll() {
+        return statsQuery()
+                .orderBy(team.name.asc())
+                .fetch();
+    }
+
+    public Optional<TeamStatsDto> findByTeamId(Long teamId) {
+        return Optional.ofNullable(statsQuery()
+                .where(teamStats.teamId.eq(teamId))
+                .fetchOne());
+    }
+
+    public List<TeamStatsDto> findByTeamName(String teamName) {
+        return statsQuery()
+                .where(team.name.eq(teamName))
+                .fetch();
+    }
+
+    /**
+     * 주어진 팀들의 통계를 member 테이블에서 다시 계산한다. (벌크 연산 뒤처럼 이벤트 없이 회원이 바뀐 경우)
+     * TeamStatsRollupListener 처럼 팀 id 순서로 team_stats row 를 먼저 잠그고, 집계와 저장은 update 한번으로 한다.
+     * (집계와 저장 사이에 다른 트랜잭션의 증감이 끼어들어 덮어쓰이지 않게)
+     * row 가 없으면 별도 트랜잭션으로 만들고, 동시에 다른 쪽이 먼저 만들었으면 그 row 를 잠근다.
+     */
+    @Transactional
+    public void refresh(Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        List<Long> existingTeamIds = queryFactory
+                .select(team.id)
+                .from(team)
+                .where(team.id.in(teamIds))
+                .orderBy(team.id.asc())
+                .fetch();
+        for (Long teamId : existingTeamIds) {
+            if (em.find(TeamStats.class, teamId, LockModeType.PESSIMISTIC_WRITE) == null) {
+                createEmpty(teamId);
+                em.find(TeamStats.class, teamId, LockModeType.PESSIMISTIC_WRITE);
+            }
+            int updated = em.createQuery("update TeamStats s set" +
+                            " s.memberCount = (select count(m) from Member m where m.team.id = :teamId)," +
+                            " s.ageSum = (select coalesce(sum(m.age), 0) from Member m where m.team.id = :teamId)," +
+                            " s.minAge = (select min(m.age) from Member m where m.team.id = :teamId)," +
+                            " s.maxAge = (select max(m.age) from Member m where m.team.id = :teamId)" +
+                            " where s.teamId = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            if (updated != 1) {
+                throw new IllegalStateException("team_stats 갱신 실패: teamId=" + teamId + ", updated=" + updated);
+            }
+        }
+    }
+
+    //다른 트랜잭션이 먼저 만들었으면 (커밋을 기다렸다가) 키 중복으로 실패하므로 무시한다
+    private void createEmpty(Long teamId) {
+        try {
+            newTransaction.executeWithoutResult(status -> jdbcTemplate.update(INSERT_EMPTY, teamId));
+        } catch (DuplicateKeyException e) {
+            //이미 있다
+        }
+    }
+
+    /**
+     * 롤업 테이블 전체를 다시 만든다.
+     */
+    @Transactional
+    public void rebuild() {
+        queryFactory
+                .delete(teamStats)
+                .execute();
+        em.clear();
+
+        for (Tuple row : aggregateQuery().fetch()) {
+            TeamStats stats = new TeamStats(row.get(0, Long.class));
+            apply(stats, row);
+            em.persist(stats);
+        }
+    }
+
+    private JPAQuery<TeamStatsDto> statsQuery() {
+        return queryFactory
+                .select(new QTeamStatsDto(
+                        teamStats.teamId,
+                        team.name,
+                        teamStats.memberCount,
+                        teamStats.ageSum,
+                        teamStats.minAge,
+                        teamStats.maxAge
+                ))
+                .from(teamStats)
+                .join(team).on(team.id.eq(teamStats.teamId));
+    }
+
+    //팀 id, 회원 수, 나이 합, 최소, 최대
+    private JPAQuery<Tuple> aggregateQuery() {
+        return queryFactory
+                .select(team.id, member.count(), member.age.sum(), member.age.min(), member.age.max())
+                .from(team)
+                .leftJoin(team.members, member)
+                .groupBy(team.id);
+    }
+
+    //sum 은 hibernate 가 Long 으로 돌려주므로 Number 로 꺼낸다
+    private void apply(TeamStats stats, Tuple row) {
+        Number ageSum = row.get(2, Number.class);
+        Number minAge = row.get(3, Number.class);
+        Number maxAge = row.get(4, Number.class);
+        stats.change(
+                row.get(1, Long.class),
+                ageSum != null ? ageSum.longValue() : 0L,
+                minAge != null ? minAge.intValue() : null,
+                maxAge != null ? maxAge.intValue() : null);
+    }
+}
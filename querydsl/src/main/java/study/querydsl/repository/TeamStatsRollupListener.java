@@ -0,0 +1,295 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.query.Query;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.entity.TeamStats;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 회원 insert/update/delete 를 team_stats 롤업에 반영한다.
+ *
+ * flush 때 나오는 이벤트를 세션(트랜잭션)별로 팀 단위 변화량으로 모아두었다가
+ * 커밋 직전(flush 가 끝난 뒤)에 팀마다 update 한번으로 반영한다.
+ * 회원 수와 나이 합은 증감으로, 최소/최대 나이는 추가일 때는 비교로 갱신하고
+ * 삭제/이동으로 경계값이 빠질 수 있을 때만 그 팀의 min/max 를 다시 구한다. (team_id, age 인덱스)
+ * 반영 전에 팀 id 순서로 team_stats row 를 select for update 로 잠근다.
+ * (다른 트랜잭션의 증감이 min/max 재계산 사이에 끼어들지 않게, 교착 없이)
+ * row 가 없으면(롤업 이전에 만들어진 팀 등) 새로 만들고 그 팀을 통째로 다시 계산한다.
+ * 롤백되면 아무것도 반영하지 않는다.
+ *
+ * 벌크 update/delete 는 이벤트가 안 나가므로 TeamStatsRepository.refresh 로 맞춰야 한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class TeamStatsRollupListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory emf;
+
+    private final Map<EventSource, Rollup> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Team) {
+            rollup(event.getSession()).teamCreated(((Team) entity).getId());
+        } else if (entity instanceof Member) {
+            Member member = (Member) entity;
+            Long teamId = teamId(member.getTeam());
+            if (teamId != null) {
+                rollup(event.getSession()).memberAdded(teamId, member.getAge());
+            }
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Member member = (Member) event.getEntity();
+        Long newTeamId = teamId(member.getTeam());
+        Object[] oldState = event.getOldState();
+        Rollup rollup = rollup(event.getSession());
+
+        if (oldState == null) {
+            //이전 값을 모르면 (detached merge 등) 새 팀만 통째로 다시 계산한다
+            if (newTeamId != null) {
+                rollup.recalculate(newTeamId);
+            }
+            return;
+        }
+
+        String[] properties = event.getPersister().getPropertyNames();
+        Long oldTeamId = teamId(oldState[indexOf(properties, "team")]);
+        int oldAge = (Integer) oldState[indexOf(properties, "age")];
+        if (oldAge == member.getAge() && Objects.equals(oldTeamId, newTeamId)) {
+            return;
+        }
+        if (oldTeamId != null) {
+            rollup.memberRemoved(oldTeamId, oldAge);
+        }
+        if (newTeamId != null) {
+            rollup.memberAdded(newTeamId, member.getAge());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Team) {
+            rollup(event.getSession()).teamDeleted(((Team) entity).getId());
+        } else if (entity instanceof Member) {
+            String[] properties = event.getPersister().getPropertyNames();
+            Object[] deletedState = event.getDeletedState();
+            Long teamId = teamId(deletedState[indexOf(properties, "team")]);
+            if (teamId != null) {
+                rollup(event.getSession()).memberRemoved(teamId, (Integer) deletedState[indexOf(properties, "age")]);
+            }
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private Rollup rollup(EventSource session) {
+        return pending.computeIfAbsent(session, s -> {
+            Rollup rollup = new Rollup(s);
+            s.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) rollup);
+            s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) rollup);
+            return rollup;
+        });
+    }
+
+    private static Long teamId(Object team) {
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+
+    private static int indexOf(String[] properties, String name) {
+        for (int i = 0; i < properties.length; i++) {
+            if (properties[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Member." + name + " 속성이 없습니다.");
+    }
+
+    private static class Delta {
+        boolean created;
+        boolean deleted;
+        long count;
+        long ageSum;
+        Integer addedMin;
+        Integer addedMax;
+        boolean recalculateBounds;
+        boolean recalculateAll;
+    }
+
+    private class Rollup implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+
+        private final EventSource session;
+        private final Map<Long, Delta> deltas = new LinkedHashMap<>();
+
+        Rollup(EventSource session) {
+            this.session = session;
+        }
+
+        void teamCreated(Long teamId) {
+            delta(teamId).created = true;
+        }
+
+        void teamDeleted(Long teamId) {
+            delta(teamId).deleted = true;
+        }
+
+        void memberAdded(Long teamId, int age) {
+            Delta delta = delta(teamId);
+            delta.count++;
+            delta.ageSum += age;
+            delta.addedMin = delta.addedMin == null ? age : Math.min(delta.addedMin, age);
+            delta.addedMax = delta.addedMax == null ? age : Math.max(delta.addedMax, age);
+        }
+
+        void memberRemoved(Long teamId, int age) {
+            Delta delta = delta(teamId);
+            delta.count--;
+            delta.ageSum -= age;
+            delta.recalculateBounds = true;
+        }
+
+        void recalculate(Long teamId) {
+            delta(teamId).recalculateAll = true;
+        }
+
+        private Delta delta(Long teamId) {
+            return deltas.computeIfAbsent(teamId, id -> new Delta());
+        }
+
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            boolean created = false;
+            for (Map.Entry<Long, Delta> entry : deltas.entrySet()) {
+                if (entry.getValue().created && !entry.getValue().deleted) {
+                    session.persist(new TeamStats(entry.getKey()));
+                    created = true;
+                }
+            }
+            if (created) {
+                session.flush();
+            }
+
+            List<Long> teamIds = new ArrayList<>(deltas.keySet());
+            Collections.sort(teamIds);
+            for (Long teamId : teamIds) {
+                apply(session, teamId, deltas.get(teamId));
+            }
+        }
+
+        @Override
+        public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+            pending.remove(this.session);
+        }
+
+        private void apply(SessionImplementor session, Long teamId, Delta delta) {
+            if (delta.deleted) {
+                session.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+                return;
+            }
+            if (session.find(TeamStats.class, teamId, LockModeType.PESSIMISTIC_WRITE) == null) {
+                session.persist(new TeamStats(teamId));
+                session.flush();
+                delta.recalculateAll = true;
+            }
+            if (delta.recalculateAll) {
+                update(teamId, session.createQuery("update TeamStats s set" +
+                                " s.memberCount = (select count(m) from Member m where m.team.id = :teamId)," +
+                                " s.ageSum = (select coalesce(sum(m.age), 0) from Member m where m.team.id = :teamId)," +
+                                " s.minAge = (select min(m.age) from Member m where m.team.id = :teamId)," +
+                                " s.maxAge = (select max(m.age) from Member m where m.team.id = :teamId)" +
+                                " where s.teamId = :teamId")
+                        .setParameter("teamId", teamId));
+                return;
+            }
+            if (delta.count != 0 || delta.ageSum != 0) {
+                update(teamId, session.createQuery("update TeamStats s set" +
+                                " s.memberCount = s.memberCount + :count," +
+                                " s.ageSum = s.ageSum + :ageSum" +
+                                " where s.teamId = :teamId")
+                        .setParameter("count", delta.count)
+                        .setParameter("ageSum", delta.ageSum)
+                        .setParameter("teamId", teamId));
+            }
+            if (delta.recalculateBounds) {
+                update(teamId, session.createQuery("update TeamStats s set" +
+                                " s.minAge = (select min(m.age) from Member m where m.team.id = :teamId)," +
+                                " s.maxAge = (select max(m.age) from Member m where m.team.id = :teamId)" +
+                                " where s.teamId = :teamId")
+                        .setParameter("teamId", teamId));
+            } else if (delta.addedMin != null) {
+                update(teamId, session.createQuery("update TeamStats s set" +
+                                " s.minAge = case when s.minAge is null or s.minAge > :minAge then :minAge else s.minAge end," +
+                                " s.maxAge = case when s.maxAge is null or s.maxAge < :maxAge then :maxAge else s.maxAge end" +
+                                " where s.teamId = :teamId")
+                        .setParameter("minAge", delta.addedMin)
+                        .setParameter("maxAge", delta.addedMax)
+                        .setParameter("teamId", teamId));
+            }
+        }
+
+        //잠근 row 를 고치는 것이므로 한 건이 아니면 롤업이 어긋난 것이다
+        private void update(Long teamId, Query<?> query) {
+            int updated = query.executeUpdate();
+            if (updated != 1) {
+                throw new IllegalStateException("team_stats 갱신 실패: teamId=" + teamId + ", updated=" + updated);
+            }
+        }
+    }
+}
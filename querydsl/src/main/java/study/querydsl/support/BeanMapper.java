@@ -0,0 +1,273 @@
+package study.querydsl.support;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 프로퍼티 이름 순서대로 값을 받아 DTO 를 채우는 매퍼.
+ * Projections.bean/fields 는 행마다 리플렉션(Method.invoke/Field.set)으로 값을 넣지만,
+ * 여기서는 (타입, 프로퍼티 목록)별로 한번만 기본 생성자와 setter 를 LambdaMetafactory 로 Supplier/BiConsumer 로 만들어 두고
+ * 행마다 직접 호출한다.
+ * - setter 가 없으면 필드 MethodHandle 로 넣는다 (Projections.fields 대신)
+ * - null 값은 넣지 않는다 (QBean 과 같다, int 같은 기본형은 기본값 유지)
+ */
+public final class BeanMapper<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final Map<List<Object>, BeanMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    private final List<String> properties;
+    private final Supplier<T> constructor;
+    private final BiConsumer<Object, Object>[] setters;
+    private final Class<?>[] propertyTypes;
+
+    @SuppressWarnings("unchecked")
+    private BeanMapper(Class<T> type, List<String> properties) {
+        this.type = type;
+        this.properties = properties;
+        this.constructor = constructor(type);
+        this.setters = new BiConsumer[properties.size()];
+        this.propertyTypes = new Class<?>[properties.size()];
+        for (int i = 0; i < properties.size(); i++) {
+            Method setter = findSetter(type, properties.get(i));
+            if (setter != null) {
+                setters[i] = compile(setter);
+                propertyTypes[i] = wrap(setter.getParameterTypes()[0]);
+            } else {
+                Field field = findField(type, properties.get(i));
+                setters[i] = fieldSetter(type, field);
+                propertyTypes[i] = wrap(field.getType());
+            }
+        }
+    }
+
+    /**
+     * 같은 (타입, 프로퍼티 목록)이면 같은 매퍼를 돌려준다.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BeanMapper<T> of(Class<T> type, String... properties) {
+        List<Object> key = new ArrayList<>(properties.length + 1);
+        key.add(type);
+        key.addAll(Arrays.asList(properties));
+        return (BeanMapper<T>) MAPPERS.computeIfAbsent(key,
+                k -> new BeanMapper<>(type, Collections.unmodifiableList(Arrays.asList(properties.clone()))));
+    }
+
+    /**
+     * Projections.bean/fields 대신 쓰는 QueryDSL 프로젝션. 이름은 별칭(as) 또는 경로 이름으로 정한다.
+     * ex) BeanMapper.projection(UserDto.class, member.username.as("name"), member.age)
+     */
+    public static <T> FactoryExpression<T> projection(Class<T> type, Expression<?>... args) {
+        String[] properties = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            properties[i] = propertyName(args[i]);
+        }
+        return new Projection<>(of(type, properties), args);
+    }
+
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * values 는 프로퍼티 목록과 같은 순서.
+     */
+    public T newInstance(Object... values) {
+        T bean = constructor.get();
+        for (int i = 0; i < setters.length; i++) {
+            if (values[i] != null) {
+                setters[i].accept(bean, values[i]);
+            }
+        }
+        return bean;
+    }
+
+    public T map(Tuple tuple) {
+        return newInstance(tuple.toArray());
+    }
+
+    /**
+     * JdbcTemplate 용. select 컬럼 순서가 프로퍼티 목록 순서와 같아야 한다.
+     */
+    public RowMapper<T> rowMapper() {
+        return (rs, rowNum) -> {
+            T bean = constructor.get();
+            for (int i = 0; i < setters.length; i++) {
+                Object value = rs.getObject(i + 1, propertyTypes[i]);
+                if (value != null) {
+                    setters[i].accept(bean, value);
+                }
+            }
+            return bean;
+        };
+    }
+
+    private static String propertyName(Expression<?> expr) {
+        if (expr instanceof Path) {
+            return ((Path<?>) expr).getMetadata().getName();
+        }
+        if (expr instanceof Operation && ((Operation<?>) expr).getOperator() == Ops.ALIAS) {
+            Expression<?> alias = ((Operation<?>) expr).getArg(1);
+            if (alias instanceof Path) {
+                return ((Path<?>) alias).getMetadata().getName();
+            }
+        }
+        throw new IllegalArgumentException("프로퍼티 이름을 알 수 없습니다. as 로 별칭을 주세요: " + expr);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> constructor(Class<T> type) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " 에 public 기본 생성자가 없습니다.", e);
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(type));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            //람다로 못 만들면 MethodHandle 을 직접 호출한다
+            MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return (T) generic.invoke();
+                } catch (Throwable t) {
+                    throw rethrow(t);
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> compile(Method setter) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(setter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(setter + " 에 접근할 수 없습니다.", e);
+        }
+        try {
+            //값은 래퍼 타입으로 받아서 람다 안에서 언박싱한다 (Integer -> int)
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    SETTER_TYPE,
+                    handle,
+                    MethodType.methodType(void.class, setter.getDeclaringClass(), wrap(setter.getParameterTypes()[0])));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            return invoker(handle);
+        }
+    }
+
+    private static BiConsumer<Object, Object> fieldSetter(Class<?> type, Field field) {
+        try {
+            return invoker(MethodHandles.privateLookupIn(field.getDeclaringClass(), LOOKUP).unreflectSetter(field));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + "." + field.getName() + " 에 접근할 수 없습니다.", e);
+        }
+    }
+
+    private static BiConsumer<Object, Object> invoker(MethodHandle handle) {
+        MethodHandle generic = handle.asType(SETTER_TYPE);
+        return (bean, value) -> {
+            try {
+                generic.invokeExact(bean, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        };
+    }
+
+    private static Method findSetter(Class<?> type, String property) {
+        String name = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == 1) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> type, String property) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                return current.getDeclaredField(property);
+            } catch (NoSuchFieldException e) {
+                //상위 클래스에서 찾는다
+            }
+        }
+        throw new IllegalArgumentException(type.getName() + " 에 " + property + " 프로퍼티가 없습니다.");
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    private static final class Projection<T> extends FactoryExpressionBase<T> {
+
+        private final transient BeanMapper<T> mapper;
+        private final List<Expression<?>> args;
+
+        Projection(BeanMapper<T> mapper, Expression<?>[] args) {
+            super(mapper.type);
+            this.mapper = mapper;
+            this.args = Collections.unmodifiableList(Arrays.asList(args.clone()));
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        public T newInstance(Object... values) {
+            return mapper.newInstance(values);
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package study.querydsl.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+
+/**
+ * 리포지토리 조회 메서드별 지표를 남긴다. (/actuator/metrics/member.search 등)
+ * - member.search : 실행 시간 (percentile histogram)
+ * - member.search.rows : 반환 row 수
+ * - member.search.statements : 실행된 SQL 수
+ * 태그는 operation, filters(값이 들어온 검색 조건 필드), countQuery(count 쿼리 실행 여부)
+ * 결과를 반환하지 않는 조회(export)는 row 수를 남기지 않으므로 호출한 쪽에서 recordRows 로 남긴다.
+ */
+@Component
+public class MemberQueryMetrics {
+
+    private static final ThreadLocal<Boolean> COUNT_QUERY_EXECUTED = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+    private final SqlStatementCounter statementCounter;
+
+    public MemberQueryMetrics(MeterRegistry registry, SqlStatementCounter statementCounter) {
+        this.registry = registry;
+        this.statementCounter = statementCounter;
+    }
+
+    public <T> T record(String operation, MemberSearchCondition condition, Supplier<T> query) {
+        long statementsBefore = statementCounter.current();
+        COUNT_QUERY_EXECUTED.set(Boolean.FALSE);
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        T result = null;
+        try {
+            result = query.get();
+            return result;
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Tags tags = Tags.of(
+                    "operation", operation,
+                    "filters", filters(condition),
+                    "countQuery", String.valueOf(Boolean.TRUE.equals(COUNT_QUERY_EXECUTED.get())));
+            COUNT_QUERY_EXECUTED.remove();
+
+            sample.stop(Timer.builder("member.search")
+                    .tags(tags)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            if (result != null) {
+                rows(tags).record(rows(result));
+            }
+            DistributionSummary.builder("member.search.statements")
+                    .tags(tags)
+                    .register(registry)
+                    .record(statementCounter.current() - statementsBefore);
+        }
+    }
+
+    /**
+     * record 의 결과로 row 수를 알 수 없는 조회의 row 수를 남긴다.
+     */
+    public void recordRows(String operation, MemberSearchCondition condition, long rows) {
+        rows(Tags.of(
+                "operation", operation,
+                "filters", filters(condition),
+                "countQuery", "false"))
+                .record(rows);
+    }
+
+    /**
+     * 페이징 메서드에서 count 쿼리를 실제로 실행할 때 부른다.
+     */
+    public void countQueryExecuted() {
+        COUNT_QUERY_EXECUTED.set(Boolean.TRUE);
+    }
+
+    private static String filters(MemberSearchCondition condition) {
+        if (condition == null) {
+            return "none";
+        }
+        StringJoiner joiner = new StringJoiner(",");
+        if (StringUtils.hasText(condition.getUsername())) {
+            joiner.add("username");
+        }
+        if (StringUtils.hasText(condition.getUsernamePrefix())) {
+            joiner.add("usernamePrefix");
+        }
+        if (StringUtils.hasText(condition.getUsernameContains())) {
+            joiner.add("usernameContains");
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            joiner.add("teamName");
+        }
+        if (condition.getAgeGoe() != null) {
+            joiner.add("ageGoe");
+        }
+        if (condition.getAgeLoe() != null) {
+            joiner.add("ageLoe");
+        }
+        return joiner.length() == 0 ? "none" : joiner.toString();
+    }
+
+    private DistributionSummary rows(Tags tags) {
+        return DistributionSummary.builder("member.search.rows")
+                .tags(tags)
+                .register(registry);
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,59 @@
+package study.querydsl.support;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.persistence.EntityManager;
+import java.sql.SQLException;
+
+/**
+ * ReplicaLagWindow 가 열려 있을 때 시작한 읽기 전용 트랜잭션은 CacheMode.GET 으로 실행한다.
+ * (replica 에서 읽은 오래된 엔티티/쿼리 결과가 2차 캐시에 들어가면 지연 시간이 지나도, 쓴 사람에게도 그 값이 나간다)
+ * open-in-view 처럼 EntityManager 가 트랜잭션보다 오래 살아 있으므로 트랜잭션이 끝나면 원래 CacheMode 로 돌린다.
+ */
+public class ReplicaLagJpaDialect extends HibernateJpaDialect {
+
+    private final ReplicaLagWindow lagWindow;
+
+    public ReplicaLagJpaDialect(ReplicaLagWindow lagWindow) {
+        this.lagWindow = lagWindow;
+    }
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly() || !lagWindow.isOpen()) {
+            return transactionData;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode previousCacheMode = session.getCacheMode();
+        session.setCacheMode(CacheMode.GET);
+        return new CacheModeReset(transactionData, session, previousCacheMode);
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof CacheModeReset) {
+            CacheModeReset reset = (CacheModeReset) transactionData;
+            reset.session.setCacheMode(reset.previousCacheMode);
+            transactionData = reset.transactionData;
+        }
+        super.cleanupTransaction(transactionData);
+    }
+
+    private static class CacheModeReset {
+
+        private final Object transactionData;
+        private final Session session;
+        private final CacheMode previousCacheMode;
+
+        CacheModeReset(Object transactionData, Session session, CacheMode previousCacheMode) {
+            this.transactionData = transactionData;
+            this.session = session;
+            this.previousCacheMode = previousCacheMode;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package study.querydsl.support;
+
+/**
+ * 어느 쓰기 트랜잭션이든 커밋된 뒤 replicaLagToleranceMillis 동안은 replica 가 아직 따라오지 못했을 수 있다.
+ * 그동안 읽은 결과는 다른 사용자에게 오래된 값을 돌려줄 수 있으므로 공유 캐시(검색 캐시, 2차 캐시)에 넣지 않는다.
+ * (라우팅의 read-your-writes 는 요청별로 따지지만, 캐시는 모두가 같이 쓰므로 마지막 커밋 시각은 전체 기준이다)
+ */
+public class ReplicaLagWindow {
+
+    private final long replicaLagToleranceMillis;
+    private volatile long lastCommittedAt;
+
+    public ReplicaLagWindow(long replicaLagToleranceMillis) {
+        this.replicaLagToleranceMillis = replicaLagToleranceMillis;
+    }
+
+    public void committed(long committedAt) {
+        lastCommittedAt = committedAt;
+    }
+
+    /**
+     * 지금 replica 에서 읽으면 오래된 값일 수 있는지
+     */
+    public boolean isOpen() {
+        return System.currentTimeMillis() - lastCommittedAt < replicaLagToleranceMillis;
+    }
+
+    public long getReplicaLagToleranceMillis() {
+        return replicaLagToleranceMillis;
+    }
+}
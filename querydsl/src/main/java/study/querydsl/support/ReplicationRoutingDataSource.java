@@ -0,0 +1,152 @@
+package study.querydsl.support;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true))은 replica, 나머지는 primary 로 보낸다.
+ * 커넥션을 고르는 시점에 트랜잭션의 readOnly 표시를 봐야 하므로 LazyConnectionDataSourceProxy 로 감싸서 쓴다.
+ *
+ * replica 는 primary 보다 늦게 반영되므로, 쓰기 트랜잭션이 커밋된 뒤 replicaLagToleranceMillis 동안은
+ * 그 쓰기를 한 쪽의 읽기 전용 트랜잭션도 primary 로 보낸다. (방금 쓴 내용을 바로 다시 읽는 요청이 옛날 값을 보지 않게)
+ * 마지막 쓰기 시각은 웹 요청이면 요청 속성과 last-write-at 쿠키로(다음 요청까지), 아니면 스레드별로 기억한다.
+ * 다른 사용자의 쓰기 때문에 primary 로 몰리지 않는다. (쿠키를 조작해도 primary 에서 읽게 될 뿐이다)
+ * 검색 실행기 스레드에는 propagate 로 호출한 쪽의 시각을 넘긴다.
+ * 전체 기준의 마지막 커밋 시각은 ReplicaLagWindow 에 남긴다. (replica 에서 읽은 결과를 공유 캐시에 넣을지 판단)
+ * 트랜잭션 밖에서 실행되는 SQL 은 항상 primary 로 가고, 쓰기로 기록하지 않는다.
+ */
+public class ReplicationRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String LAST_WRITE_COOKIE = "last-write-at";
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+    private static final String LAST_WRITE_ATTRIBUTE = ReplicationRoutingDataSource.class.getName() + ".lastWrite";
+
+    //웹 요청 밖(배치, 테스트, 검색 실행기)의 마지막 쓰기 시각
+    private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<>();
+
+    private final ReplicaLagWindow lagWindow;
+    private final long replicaLagToleranceMillis;
+
+    public ReplicationRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagWindow lagWindow) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        targets.put(REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.lagWindow = lagWindow;
+        this.replicaLagToleranceMillis = lagWindow.getReplicaLagToleranceMillis();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            recordWriteOnCommit();
+            return PRIMARY;
+        }
+        if (System.currentTimeMillis() - lastWriteCommittedAt() < replicaLagToleranceMillis) {
+            return PRIMARY;
+        }
+        return REPLICA;
+    }
+
+    /**
+     * 지금 요청(요청 밖이면 스레드)에서 마지막으로 쓰기 트랜잭션이 커밋된 시각. 없으면 0
+     */
+    public static long lastWriteCommittedAt() {
+        ServletRequestAttributes attributes = currentRequest();
+        if (attributes == null) {
+            Long lastWrite = LAST_WRITE.get();
+            return lastWrite != null ? lastWrite : 0;
+        }
+        Object recorded = attributes.getAttribute(LAST_WRITE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (recorded != null) {
+            return (Long) recorded;
+        }
+        Cookie[] cookies = attributes.getRequest().getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Long.parseLong(cookie.getValue());
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 다른 스레드에서 실행되는 task 도 지금 요청(스레드)의 마지막 쓰기 시각으로 커넥션을 고르도록 감싼다.
+     * (SearchExecutor 의 TaskDecorator)
+     */
+    public static Runnable propagate(Runnable task) {
+        long lastWrite = lastWriteCommittedAt();
+        if (lastWrite == 0) {
+            return task;
+        }
+        return () -> {
+            Long previous = LAST_WRITE.get();
+            LAST_WRITE.set(lastWrite);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    LAST_WRITE.set(previous);
+                } else {
+                    LAST_WRITE.remove();
+                }
+            }
+        };
+    }
+
+    private void recordWriteOnCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                long committedAt = System.currentTimeMillis();
+                lagWindow.committed(committedAt);
+                recordWrite(committedAt);
+            }
+        });
+    }
+
+    //응답이 이미 나가기 시작했으면 쿠키는 못 붙이고 이번 요청 안에서만 기억한다
+    private void recordWrite(long committedAt) {
+        ServletRequestAttributes attributes = currentRequest();
+        if (attributes == null) {
+            LAST_WRITE.set(committedAt);
+            return;
+        }
+        attributes.setAttribute(LAST_WRITE_ATTRIBUTE, committedAt, RequestAttributes.SCOPE_REQUEST);
+        HttpServletResponse response = attributes.getResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(LAST_WRITE_COOKIE, String.valueOf(committedAt));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (replicaLagToleranceMillis + 999) / 1000));
+            response.addCookie(cookie);
+        }
+    }
+
+    private static ServletRequestAttributes currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? (ServletRequestAttributes) attributes : null;
+    }
+}
@@ -0,0 +1,97 @@
+package study.querydsl.support;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * datasource.routing.enabled=true 이면 spring.datasource 대신 primary/replica 두 커넥션 풀을 만들고
+ * ReplicationRoutingDataSource 로 묶는다.
+ * 풀은 빈으로 등록하지 않는다. (DataSource 빈이 하나여야 JPA/JdbcTemplate 자동 설정과 p6spy 가 그대로 동작한다)
+ * replica 지연 중에 읽은 결과가 공유 캐시에 들어가지 않도록 ReplicaLagWindow 를 빈으로 두고
+ * 검색 캐시(MemberSearchCache)와 JPA 트랜잭션(ReplicaLagJpaDialect)이 확인한다.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "datasource.routing.enabled", havingValue = "true")
+public class ReplicationRoutingDataSourceConfig implements DisposableBean {
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    @ConfigurationProperties("datasource.routing.primary")
+    public HikariConfig primaryPoolConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("primary");
+        return config;
+    }
+
+    @Bean
+    @ConfigurationProperties("datasource.routing.replica")
+    public HikariConfig replicaPoolConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("replica");
+        config.setReadOnly(true);
+        return config;
+    }
+
+    @Bean
+    public ReplicaLagWindow replicaLagWindow(@Value("${datasource.routing.replica-lag-tolerance-ms:1000}") long replicaLagToleranceMillis) {
+        return new ReplicaLagWindow(replicaLagToleranceMillis);
+    }
+
+    @Bean
+    public DataSource dataSource(@Qualifier("primaryPoolConfig") HikariConfig primaryConfig,
+                                 @Qualifier("replicaPoolConfig") HikariConfig replicaConfig,
+                                 ReplicaLagWindow replicaLagWindow) {
+        ReplicationRoutingDataSource routing = new ReplicationRoutingDataSource(
+                pool(primaryConfig), pool(replicaConfig), replicaLagWindow);
+        routing.afterPropertiesSet();
+        log.info("datasource routing: primary {}, replica {} (lag tolerance {}ms)",
+                primaryConfig.getJdbcUrl(), replicaConfig.getJdbcUrl(), replicaLagWindow.getReplicaLagToleranceMillis());
+
+        //트랜잭션 시작이 아니라 첫 SQL 실행 때 실제 커넥션을 잡아야 readOnly 표시를 보고 고를 수 있다
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    //lag window 동안의 읽기 전용 트랜잭션은 2차 캐시/쿼리 캐시를 읽기만 하고 채우지 않는다
+    @Bean
+    public static BeanPostProcessor replicaLagJpaDialectPostProcessor(ObjectProvider<ReplicaLagWindow> replicaLagWindow) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractEntityManagerFactoryBean) {
+                    ((AbstractEntityManagerFactoryBean) bean).setJpaDialect(
+                            new ReplicaLagJpaDialect(replicaLagWindow.getObject()));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private HikariDataSource pool(HikariConfig config) {
+        HikariDataSource pool = new HikariDataSource(config);
+        pools.add(pool);
+        return pool;
+    }
+
+    @Override
+    public void destroy() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,81 @@
+package study.querydsl.support;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 검색 쿼리 전용 실행기. 동시에 DB 로 가는 작업 수를 maxConcurrency 로 묶는다.
+ * (가상 스레드는 개수 제한이 없으므로 커넥션 풀을 넘지 않게 세마포어로 막는다)
+ * queueCapacity 를 주면 permit 을 기다리는 작업도 그 수까지만 받고, 넘치면 호출한 스레드에서 실행해서 제출 속도를 늦춘다.
+ * (스레드 풀은 풀의 큐와 거절 정책이 같은 일을 하므로 주지 않는다)
+ * taskDecorator 는 호출한 스레드에서 작업을 감싼다. (요청 단위 SQL 수 전달 등)
+ */
+public class SearchExecutor implements Executor {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final TaskDecorator taskDecorator;
+    //실행 중이거나 permit 을 기다리는 작업 수의 상한
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public SearchExecutor(ExecutorService delegate, int maxConcurrency) {
+        this(delegate, maxConcurrency, task -> task);
+    }
+
+    public SearchExecutor(ExecutorService delegate, int maxConcurrency, TaskDecorator taskDecorator) {
+        this(delegate, maxConcurrency, Integer.MAX_VALUE - maxConcurrency, taskDecorator);
+    }
+
+    public SearchExecutor(ExecutorService delegate, int maxConcurrency, int queueCapacity, TaskDecorator taskDecorator) {
+        if (maxConcurrency <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("maxConcurrency 는 1 이상, queueCapacity 는 0 이상이어야 합니다.");
+        }
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrency);
+        this.taskDecorator = taskDecorator;
+        this.maxPending = maxConcurrency + queueCapacity;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Runnable task = limit(taskDecorator.decorate(command));
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            task.run();
+            return;
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private Runnable limit(Runnable task) {
+        return () -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+}
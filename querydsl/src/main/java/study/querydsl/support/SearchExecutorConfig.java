@@ -0,0 +1,54 @@
+package study.querydsl.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 비동기 검색(searchAsync 등)에 쓰는 실행기.
+ * 가상 스레드를 쓸 수 있는 JDK 면 가상 스레드로, 아니면 고정 크기 스레드 풀로 만든다.
+ */
+@Slf4j
+@Configuration
+public class SearchExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public SearchExecutor memberSearchExecutor(@Value("${member.search.executor.max-concurrency:16}") int maxConcurrency,
+                                               @Value("${member.search.executor.queue-capacity:1000}") int queueCapacity,
+                                               SqlStatementCounter statementCounter) {
+        //호출한 요청의 SQL 수 집계와 마지막 쓰기 시각(replica 라우팅)을 실행 스레드로 넘긴다
+        TaskDecorator taskDecorator = task -> statementCounter.propagate(ReplicationRoutingDataSource.propagate(task));
+
+        ExecutorService virtualThreads = virtualThreadExecutor();
+        if (virtualThreads != null) {
+            log.info("member search executor: virtual threads (max concurrency {}, queue {})", maxConcurrency, queueCapacity);
+            return new SearchExecutor(virtualThreads, maxConcurrency, queueCapacity, taskDecorator);
+        }
+
+        log.info("member search executor: thread pool {} (queue {})", maxConcurrency, queueCapacity);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("member-search-"),
+                new ThreadPoolExecutor.CallerRunsPolicy()); //큐가 차면 요청 스레드에서 실행해서 자연스럽게 속도를 늦춘다
+        pool.allowCoreThreadTimeOut(true);
+        return new SearchExecutor(pool, maxConcurrency, taskDecorator);
+    }
+
+    //JDK 21 이상에서만 있는 메서드라 리플렉션으로 찾는다 (빌드는 11 기준)
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
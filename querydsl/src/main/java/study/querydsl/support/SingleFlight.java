@@ -0,0 +1,90 @@
+package study.querydsl.support;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 같은 키로 동시에 들어온 호출을 하나로 합친다. (single-flight)
+ * 먼저 온 호출만 실제로 실행하고, 실행 중에 들어온 호출은 그 결과(예외 포함)를 같이 받는다.
+ * 끝나면 바로 키를 지우므로 결과를 저장해 두지 않는다. 이후 호출은 다시 실행된다.
+ */
+public class SingleFlight<K> {
+
+    private final Map<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 호출한 스레드에서 실행한다. 이미 실행 중이면 그 결과를 기다린다.
+     * @param onShared 다른 호출의 결과를 같이 받게 됐을 때 불린다 (지표용)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(K key, Supplier<T> call, Runnable onShared) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            onShared.run();
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        try {
+            T result = call.get();
+            complete(key, created, result, null);
+            return result;
+        } catch (RuntimeException | Error e) {
+            complete(key, created, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * call 이 돌려주는 future 를 같은 키의 호출끼리 나눠 갖는다.
+     * 호출마다 별도의 future 를 돌려주므로 한쪽이 cancel 해도 다른 쪽에는 영향이 없다.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(K key, Supplier<CompletableFuture<T>> call, Runnable onShared) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            onShared.run();
+            return (CompletableFuture<T>) running.copy();
+        }
+
+        try {
+            call.get().whenComplete((result, e) -> complete(key, created, result, e));
+        } catch (RuntimeException | Error e) {
+            complete(key, created, null, e);
+        }
+        return (CompletableFuture<T>) created.copy();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    //키를 먼저 지워야 완료 뒤에 들어온 호출이 끝난 결과를 받지 않고 새로 실행한다
+    private void complete(K key, CompletableFuture<Object> future, Object result, Throwable e) {
+        inFlight.remove(key, future);
+        if (e != null) {
+            future.completeExceptionally(e);
+        } else {
+            future.complete(result);
+        }
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return e;
+    }
+}
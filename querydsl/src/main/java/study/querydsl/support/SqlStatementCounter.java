@@ -0,0 +1,132 @@
+package study.querydsl.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hibernate 가 실행하는 SQL 수를 스레드별로 센다.
+ * QuerydslApplication 에서 hibernate.session_factory.statement_inspector 로 등록된다.
+ *
+ * sql.statement-guard.threshold 가 0보다 크면 한 요청에서 그 수를 넘는 순간
+ * 넘긴 SQL 과 호출 스택을 warn 로그로 남긴다. (루프 안에서 lazy 로딩하는 N+1 찾기용)
+ * 요청 단위 수는 스레드가 아니라 요청에 붙으므로, propagate 로 감싼 작업(비동기 검색)과
+ * async dispatch 스레드에서 나간 SQL 도 같은 요청으로 센다.
+ */
+@Slf4j
+@Component
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private final int threshold;
+
+    public SqlStatementCounter(@Value("${sql.statement-guard.threshold:0}") int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        State state = STATE.get();
+        state.count++;
+        Request request = state.request;
+        if (request == null) {
+            return sql;
+        }
+        long executed = request.statements.incrementAndGet();
+        if (threshold > 0 && executed > threshold && !request.warned) {
+            request.warned = true;
+            log.warn("[{}] SQL 실행 수가 {}개를 넘었습니다. sql={}", request.name, threshold, sql,
+                    new IllegalStateException("SQL statement threshold exceeded"));
+        }
+        return sql;
+    }
+
+    /**
+     * 현재 스레드에서 지금까지 실행된 SQL 수. 구간 측정은 전후 값의 차이로 한다.
+     */
+    public long current() {
+        return STATE.get().count;
+    }
+
+    /**
+     * operation 을 실행하는 동안 나간 SQL 수
+     */
+    public long countStatements(Runnable operation) {
+        long before = current();
+        operation.run();
+        return current() - before;
+    }
+
+    public void beginRequest(String request) {
+        STATE.get().request = new Request(request);
+    }
+
+    /**
+     * @return 요청 동안 실행된 SQL 수 (다른 스레드에서 실행된 것 포함)
+     */
+    public long endRequest() {
+        State state = STATE.get();
+        Request request = state.request;
+        state.request = null;
+        return request != null ? request.statements.get() : 0;
+    }
+
+    /**
+     * 요청을 끝내지 않고 이 스레드에서 떼어낸다. (비동기 응답, 다른 스레드에서 resumeRequest 로 이어서 센다)
+     */
+    public Request suspendRequest() {
+        State state = STATE.get();
+        Request request = state.request;
+        state.request = null;
+        return request;
+    }
+
+    public void resumeRequest(Request request) {
+        STATE.get().request = request;
+    }
+
+    /**
+     * 다른 스레드에서 실행되는 task 의 SQL 도 지금 스레드의 요청에 더해지도록 감싼다.
+     * (SearchExecutor 의 TaskDecorator)
+     */
+    public Runnable propagate(Runnable task) {
+        Request request = STATE.get().request;
+        if (request == null) {
+            return task;
+        }
+        return () -> {
+            State state = STATE.get();
+            Request previous = state.request;
+            state.request = request;
+            try {
+                task.run();
+            } finally {
+                state.request = previous;
+            }
+        };
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    private static class State {
+        long count;
+        Request request;
+    }
+
+    //여러 스레드가 같이 더하므로 수는 AtomicLong
+    public static final class Request {
+        private final String name;
+        private final AtomicLong statements = new AtomicLong();
+        private volatile boolean warned;
+
+        private Request(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package study.querydsl.support;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "sql.statement-guard.threshold")
+public class SqlStatementGuardConfig implements WebMvcConfigurer {
+
+    private final SqlStatementGuardInterceptor sqlStatementGuardInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(sqlStatementGuardInterceptor);
+    }
+}
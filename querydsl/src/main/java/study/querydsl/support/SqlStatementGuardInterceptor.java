@@ -0,0 +1,50 @@
+package study.querydsl.support;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 요청 단위로 SQL 실행 수를 재서 임계치를 넘은 요청을 로그로 남긴다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SqlStatementGuardInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String REQUEST_ATTRIBUTE = SqlStatementGuardInterceptor.class.getName() + ".request";
+
+    private final SqlStatementCounter statementCounter;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Object suspended = request.getAttribute(REQUEST_ATTRIBUTE);
+        if (request.getDispatcherType() == DispatcherType.ASYNC && suspended != null) {
+            statementCounter.resumeRequest((SqlStatementCounter.Request) suspended);
+            return true;
+        }
+        statementCounter.beginRequest(request.getMethod() + " " + request.getRequestURI());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        long executed = statementCounter.endRequest();
+        int threshold = statementCounter.getThreshold();
+        if (threshold > 0 && executed > threshold) {
+            log.warn("[{} {}] 요청에서 SQL 이 {}번 실행되었습니다. (임계치 {})",
+                    request.getMethod(), request.getRequestURI(), executed, threshold);
+        }
+    }
+
+    //비동기 응답이면 이 스레드에서 떼어두었다가 async dispatch 때 이어서 잰다 (그 사이 검색 실행기에서 나간 SQL 포함)
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(REQUEST_ATTRIBUTE, statementCounter.suspendRequest());
+    }
+}
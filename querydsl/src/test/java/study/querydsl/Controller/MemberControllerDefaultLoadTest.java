@@ -0,0 +1,21 @@
+package study.querydsl.Controller;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * 기본 설정(Hikari 기본값, SQL/바인딩 trace 로그, p6spy) 그대로, DB 만 메모리 H2 로 바꿔서 잰다.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:load-default;DB_CLOSE_DELAY=-1",
+        "member.init.count=" + MemberControllerLoadTest.MEMBER_COUNT,
+        "member.init.team-count=" + MemberControllerLoadTest.TEAM_COUNT
+})
+@ActiveProfiles("local")
+class MemberControllerDefaultLoadTest extends MemberControllerLoadTest {
+
+    @Override
+    String profileName() {
+        return "default";
+    }
+}
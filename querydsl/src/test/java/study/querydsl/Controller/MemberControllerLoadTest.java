@@ -0,0 +1,159 @@
+package study.querydsl.Controller;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /v1 ~ /v3/members 에 동시 클라이언트로 부하를 주고 endpoint 별 처리량과 p99 를 출력한다.
+ * 프로필마다 하위 클래스를 두고 ./gradlew loadTest 로만 실행한다. (일반 test 에서는 제외)
+ * 클라이언트 수와 시간은 -Dload.clients, -Dload.seconds, -Dload.warmup-seconds 로 바꾼다.
+ */
+@Tag("load")
+abstract class MemberControllerLoadTest {
+
+    static final int MEMBER_COUNT = 20000;
+    static final int TEAM_COUNT = 10;
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 16);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 10);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup-seconds", 3);
+
+    @LocalServerPort
+    int port;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    abstract String profileName();
+
+    @Test
+    public void v1_부하() throws Exception {
+        run("/v1/members");
+    }
+
+    @Test
+    public void v2_부하() throws Exception {
+        run("/v2/members");
+    }
+
+    @Test
+    public void v3_부하() throws Exception {
+        run("/v3/members");
+    }
+
+    private void run(String path) throws Exception {
+        load(path, WARMUP_SECONDS);
+        Result result = load(path, SECONDS);
+
+        System.out.printf("[load] profile=%s path=%s clients=%d requests=%d errors=%d throughput=%.1f req/s p50=%.1fms p99=%.1fms%n",
+                profileName(), path, CLIENTS, result.requests(), result.errors,
+                result.requests() / (double) SECONDS, result.percentile(50), result.percentile(99));
+
+        assertThat(result.errors).isZero();
+        assertThat(result.requests()).isPositive();
+    }
+
+    private Result load(String path, int seconds) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        AtomicLong errors = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(clients.submit(() -> {
+                    LatencyRecorder recorder = new LatencyRecorder();
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path + query(path)))
+                                .timeout(Duration.ofSeconds(10))
+                                .build();
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        recorder.add(System.nanoTime() - start);
+                    }
+                    return recorder.toArray();
+                }));
+            }
+
+            List<long[]> latencies = new ArrayList<>();
+            for (Future<long[]> future : futures) {
+                latencies.add(future.get());
+            }
+            return new Result(latencies, errors.get());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    //검색 캐시에 다 걸리지 않게 조건을 매번 바꾼다
+    private String query(String path) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int ageGoe = random.nextInt(MEMBER_COUNT);
+        String query = "?teamName=team" + (char) ('A' + random.nextInt(TEAM_COUNT))
+                + "&ageGoe=" + ageGoe + "&ageLoe=" + (ageGoe + 200);
+        return path.startsWith("/v1") ? query : query + "&page=" + random.nextInt(3) + "&size=10";
+    }
+
+    private static class LatencyRecorder {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class Result {
+        private final long[] sorted;
+        private final long errors;
+
+        Result(List<long[]> latencies, long errors) {
+            this.sorted = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            this.errors = errors;
+        }
+
+        long requests() {
+            return sorted.length;
+        }
+
+        //ms 단위
+        double percentile(double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+}
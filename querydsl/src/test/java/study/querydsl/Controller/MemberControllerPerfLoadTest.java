@@ -0,0 +1,17 @@
+package study.querydsl.Controller;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "member.init.count=" + MemberControllerLoadTest.MEMBER_COUNT,
+        "member.init.team-count=" + MemberControllerLoadTest.TEAM_COUNT
+})
+@ActiveProfiles("perf")
+class MemberControllerPerfLoadTest extends MemberControllerLoadTest {
+
+    @Override
+    String profileName() {
+        return "perf";
+    }
+}
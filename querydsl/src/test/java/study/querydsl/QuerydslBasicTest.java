@@ -17,11 +17,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberDto;
+import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.dto.UserDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
+import study.querydsl.support.BeanMapper;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -30,6 +33,7 @@ import javax.persistence.PersistenceUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.stream.Collectors;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.*;
@@ -552,6 +556,48 @@ public class QuerydslBasicTest {
         }
     }
 
+    @Test
+    public void Dto찾기_컴파일된매퍼(){
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+        List<UserDto> byFields = queryFactory
+                .select(Projections.fields(UserDto.class, member.username.as("name"), member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch();
+        List<UserDto> byMapper = queryFactory
+                .select(BeanMapper.projection(UserDto.class, member.username.as("name"), member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch();
+        Assertions.assertThat(byMapper).hasSize(4).isEqualTo(byFields);
+
+        List<MemberDto> memberDtos = queryFactory
+                .select(BeanMapper.projection(MemberDto.class, member.username, member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch();
+        Assertions.assertThat(memberDtos).extracting("age").containsExactly(10, 20, 30, 40);
+
+        //Tuple 로 받은 결과도 같은 매퍼로 채운다
+        BeanMapper<MemberTeamDto> mapper = BeanMapper.of(MemberTeamDto.class, "memberId", "username", "age", "teamId", "teamName");
+        List<MemberTeamDto> fromTuple = queryFactory
+                .select(member.id, member.username, member.age, team.id, team.name)
+                .from(member)
+                .leftJoin(member.team, team)
+                .orderBy(member.username.asc())
+                .fetch()
+                .stream()
+                .map(mapper::map)
+                .collect(Collectors.toList());
+        List<MemberTeamDto> byConstructor = queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .orderBy(member.username.asc())
+                .fetch();
+        Assertions.assertThat(fromTuple).isEqualTo(byConstructor);
+    }
+
     @Test
     public void findDtoByQueryProjection(){
         JPAQueryFactory queryFactory = new JPAQueryFactory(em);
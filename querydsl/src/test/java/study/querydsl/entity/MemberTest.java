@@ -1,9 +1,14 @@
 package study.querydsl.entity;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Rollback;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.support.SqlStatementCounter;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -20,6 +25,12 @@ class MemberTest {
     @PersistenceContext
     EntityManager em;
 
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
     @Test
     public void testEntity(){
         Team teamA = new Team("teamA");
@@ -51,4 +62,73 @@ class MemberTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    @Rollback
+    public void 회원추가시_팀회원컬렉션_로딩안함(){
+        Team team = new Team("bigTeam");
+        em.persist(team);
+        em.persist(new Member("existing1",10,team));
+        em.persist(new Member("existing2",20,team));
+        em.flush();
+        em.clear();
+
+        Team findTeam = em.find(Team.class, team.getId());
+
+        //insert 1번만 나가고 team.members 는 읽지 않는다
+        long before = sqlStatementCounter.current();
+        Member member = new Member("newMember",30,findTeam);
+        em.persist(member);
+        em.flush();
+        assertEquals(1, sqlStatementCounter.current() - before);
+        assertFalse(Hibernate.isInitialized(findTeam.getMembers()));
+
+        //나중에 읽으면 큐에 쌓아둔 추가까지 합쳐진다
+        assertEquals(3, findTeam.getMembers().size());
+        assertTrue(findTeam.getMembers().contains(member));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) //세션이 닫힌 팀을 만들기 위해 트랜잭션 밖에서 실행
+    public void 준영속팀에_회원추가시_컬렉션_건너뜀(){
+        Long teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("detachedTeam");
+            em.persist(team);
+            em.persist(new Member("detached1",10,team));
+            return team.getId();
+        });
+
+        try {
+            //트랜잭션 밖의 find 는 끝나면 바로 세션을 닫으므로 members 는 안 읽힌 채로 분리된다
+            Team detachedTeam = em.find(Team.class, teamId);
+            assertFalse(Hibernate.isInitialized(detachedTeam.getMembers()));
+
+            //LazyInitializationException 없이, SQL 도 나가지 않고 컬렉션만 건너뛴다
+            long before = sqlStatementCounter.current();
+            Member member = new Member("detached2",20,detachedTeam);
+            assertEquals(0, sqlStatementCounter.current() - before);
+            assertSame(detachedTeam, member.getTeam());
+            assertFalse(Hibernate.isInitialized(detachedTeam.getMembers()));
+
+            //DB 에는 member.team_id 로 반영된다
+            transactionTemplate.executeWithoutResult(status -> em.persist(member));
+            Long count = transactionTemplate.execute(status -> em
+                    .createQuery("select count(m) from Member m where m.team.id = :teamId", Long.class)
+                    .setParameter("teamId", teamId)
+                    .getSingleResult());
+            assertEquals(2L, count);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.team.id = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+                em.createQuery("delete from Team t where t.id = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+                em.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+            });
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class MemberBatchInserterTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberBatchInserter memberBatchInserter;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+
+    @Autowired
+    MemberSearchCache searchCache;
+
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+
+    @Test
+    public void 팀회원_대량저장(){
+        Team team = new Team("batchTeam");
+        memberBatchInserter.insertTeams(List.of(team));
+        assertThat(team.getId()).isNotNull();
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            members.add(new Member("batch" + i, i % 50, team));
+        }
+        members.add(new Member("batchNoTeam", 10));
+        memberBatchInserter.insertMembers(members);
+
+        //영속성 컨텍스트에는 올라가지 않고 id 만 채워진다
+        assertThat(members).allMatch(m -> m.getId() != null && !em.contains(m));
+        assertThat(members).extracting("id").doesNotHaveDuplicates();
+
+        Long count = em.createQuery("select count(m) from Member m where m.team.id = :teamId", Long.class)
+                .setParameter("teamId", team.getId())
+                .getSingleResult();
+        assertThat(count).isEqualTo(250);
+
+        //이후 persist 로 받은 id 와 겹치지 않는다
+        Member persisted = new Member("afterBatch", 20);
+        em.persist(persisted);
+        assertThat(members).extracting("id").doesNotContain(persisted.getId());
+    }
+
+    @Test
+    public void 저장되지않은팀의_회원은_넣지않음(){
+        Member member = new Member("batchUnsaved", 10, new Team("unsavedTeam"));
+
+        assertThatThrownBy(() -> memberBatchInserter.insertMembers(List.of(member)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(member.getId()).isNull();
+        assertThat(em.createQuery("select count(m) from Member m where m.username = 'batchUnsaved'", Long.class)
+                .getSingleResult()).isZero();
+    }
+
+    //통계, 캐시, 인덱스는 커밋 후 상태를 봐야 하므로 트랜잭션 밖에서 실행하고 마지막에 지운다
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void 커밋후_팀통계_캐시_인덱스반영(){
+        Team team = new Team("batchStatsTeam");
+        memberBatchInserter.insertTeams(List.of(team));
+        Long teamId = team.getId();
+
+        try {
+            assertThat(teamStatsRepository.findByTeamId(teamId).get().getMemberCount()).isZero();
+
+            //검색 캐시와 쿼리 캐시에 빈 결과를 올려둔다
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("batchStatsTeam");
+            assertThat(memberRepository.search(condition)).isEmpty();
+            assertThat(searchCache.<Object>getIfPresent(MemberSearchKey.of("search", condition))).isNotNull();
+            assertThat(memberRepository.findByUsername("batchStats1")).isEmpty();
+
+            memberBatchInserter.insertMembers(List.of(
+                    new Member("batchStats1", 10, team),
+                    new Member("batchStats2", 20, team),
+                    new Member("batchStats3", 30, team)));
+
+            TeamStatsDto stats = teamStatsRepository.findByTeamId(teamId).get();
+            assertThat(stats.getMemberCount()).isEqualTo(3);
+            assertThat(stats.getAverageAge()).isEqualTo(20.0);
+            assertThat(stats.getMinAge()).isEqualTo(10);
+            assertThat(stats.getMaxAge()).isEqualTo(30);
+
+            assertThat(searchCache.<Object>getIfPresent(MemberSearchKey.of("search", condition))).isNull();
+            assertThat(memberRepository.search(condition)).hasSize(3);
+            assertThat(memberRepository.findByUsername("batchStats1")).hasSize(1);
+
+            MemberSearchCondition prefix = new MemberSearchCondition();
+            prefix.setUsernamePrefix("batchStats");
+            assertThat(usernameIndex.resolve(prefix)).hasSize(3);
+
+            //통계 row 가 없어진 팀은 기존 회원까지 다시 집계한다
+            transactionTemplate.executeWithoutResult(status -> em
+                    .createQuery("delete from TeamStats s where s.teamId = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate());
+            memberBatchInserter.insertMembers(List.of(new Member("batchStats4", 5, team)));
+
+            stats = teamStatsRepository.findByTeamId(teamId).get();
+            assertThat(stats.getMemberCount()).isEqualTo(4);
+            assertThat(stats.getMinAge()).isEqualTo(5);
+            assertThat(stats.getMaxAge()).isEqualTo(30);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.team.id = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+                em.createQuery("delete from Team t where t.id = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+                em.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+            });
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//청크마다 커밋되므로 롤백 테스트가 아니라 실제로 커밋하고 마지막에 지운다
+@SpringBootTest(properties = "member.bulk.chunk-size=2")
+class MemberBulkOperationsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberBulkOperations memberBulkOperations;
+
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+
+    Long teamId;
+
+    @AfterEach
+    void cleanUp() {
+        if (teamId == null) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.team.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from Team t where t.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+        });
+    }
+
+    @Test
+    public void 청크단위_벌크연산() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("bulkTeam");
+            em.persist(team);
+            for (int i = 1; i <= 5; i++) {
+                em.persist(new Member("bulk" + i, i * 10, team));
+            }
+            return team.getId();
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeam");
+        condition.setAgeGoe(20);
+
+        long updated = memberBulkOperations.addAge(condition, 1);
+
+        assertThat(updated).isEqualTo(4);
+        List<Integer> ages = em.createQuery("select m.age from Member m where m.team.id = :teamId order by m.age", Integer.class)
+                .setParameter("teamId", teamId)
+                .getResultList();
+        assertThat(ages).containsExactly(10, 21, 31, 41, 51);
+        assertThat(teamStatsRepository.findByTeamId(teamId).get().getMaxAge()).isEqualTo(51);
+
+        MemberSearchCondition deleteCondition = new MemberSearchCondition();
+        deleteCondition.setTeamName("bulkTeam");
+        deleteCondition.setAgeLoe(31);
+
+        long deleted = memberBulkOperations.delete(deleteCondition);
+
+        assertThat(deleted).isEqualTo(3);
+        assertThat(teamStatsRepository.findByTeamId(teamId).get().getMemberCount()).isEqualTo(2);
+        assertThat(teamStatsRepository.findByTeamId(teamId).get().getMinAge()).isEqualTo(41);
+    }
+
+    @Test
+    public void 트랜잭션안에서_호출하면_예외() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeam");
+
+        //청크 커밋은 바깥 트랜잭션이 롤백되어도 되돌릴 수 없으므로 막는다
+        transactionTemplate.executeWithoutResult(status ->
+                assertThatThrownBy(() -> memberBulkOperations.addAge(condition, 1))
+                        .isInstanceOf(IllegalStateException.class));
+    }
+}
@@ -1,6 +1,9 @@
 package study.querydsl.repository;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -9,14 +12,17 @@ import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.support.SqlStatementCounter;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.support.SqlStatementAssert.assertStatementsAtMost;
 
 @SpringBootTest
 @Transactional
@@ -28,6 +34,9 @@ class MemberJpaRepositoryTest {
     @Autowired
     MemberJpaRepository memberJpaRepository;
 
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
     @Test
     public void 기본테스트(){
         Member member = new Member("member1",10);
@@ -111,4 +120,121 @@ class MemberJpaRepositoryTest {
 
         assertThat(result).extracting("username").containsExactly("member3","member4");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void 검색템플릿_조건조합16가지(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+        em.persist(new Member("member5",50));
+
+        //템플릿 JPQL(searchByWhereParam)과 QueryDSL(searchByBuilder, searchByWhereParam_Querydsl) 결과가 모든 조합에서 같아야 한다
+        for (int mask = 0; mask < 16; mask++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername((mask & 1) != 0 ? "member3" : null);
+            condition.setTeamName((mask & 2) != 0 ? "teamB" : null);
+            condition.setAgeGoe((mask & 4) != 0 ? 20 : null);
+            condition.setAgeLoe((mask & 8) != 0 ? 40 : null);
+
+            assertThat(memberJpaRepository.searchByWhereParam(condition))
+                    .as("mask %d", mask)
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+            assertThat(memberJpaRepository.searchByWhereParam_Querydsl(condition))
+                    .as("mask %d", mask)
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+        }
+    }
+
+    @Test
+    public void 쓰기트랜잭션안에서_조회한엔티티는_변경감지(){
+        memberJpaRepository.save(new Member("member1",10));
+        em.flush();
+        em.clear();
+
+        //바깥 읽기/쓰기 트랜잭션에 참여하면 조회한 엔티티를 고친 값이 update 로 반영된다
+        Member findMember = memberJpaRepository.findByUsername_Querydsl("member1").get(0);
+        assertThat(em.unwrap(Session.class).isReadOnly(findMember)).isFalse();
+
+        findMember.setAge(20);
+        em.flush();
+        em.clear();
+
+        assertThat(memberJpaRepository.findById(findMember.getId()).get().getAge()).isEqualTo(20);
+    }
+
+    @Test
+    public void 스트리밍검색(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> result = new ArrayList<>();
+        memberJpaRepository.exportByWhereParam(condition, result::add);
+
+        assertThat(result).extracting("username").containsExactly("member3","member4");
+    }
+
+    @Test
+    public void N플러스1_검출(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamB));
+
+        em.flush();
+        em.clear();
+
+        //dto 로 조인해서 가져오면 한번
+        List<MemberTeamDto> result = assertStatementsAtMost(sqlStatementCounter, 1,
+                () -> memberJpaRepository.searchByWhereParam(new MemberSearchCondition()));
+        assertThat(result).hasSize(2);
+
+        //엔티티를 받아서 루프에서 team 을 건드리면 team select 가 더 나간다 (batch fetch 로 묶여도 추가 쿼리는 생긴다)
+        assertThatThrownBy(() -> assertStatementsAtMost(sqlStatementCounter, 1, () -> {
+            for (Member member : memberJpaRepository.findAll()) {
+                member.getTeam().getName();
+            }
+        })).isInstanceOf(AssertionError.class);
+    }
+
+    @Test
+    public void 팀_2차캐시(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+
+        em.find(Team.class, teamA.getId()); //db 에서 읽고 캐시에 넣는다
+        em.clear();
+
+        long hitsBefore = statistics.getSecondLevelCacheHitCount();
+        long selectsBefore = sqlStatementCounter.current();
+
+        Team findTeam = em.find(Team.class, teamA.getId());
+
+        assertThat(findTeam.getName()).isEqualTo("teamA");
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(hitsBefore + 1);
+        assertThat(sqlStatementCounter.current()).isEqualTo(selectsBefore);
+    }
+}
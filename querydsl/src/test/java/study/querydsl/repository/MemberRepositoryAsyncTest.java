@@ -0,0 +1,139 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.SqlStatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//비동기 검색은 다른 스레드에서 실행되므로 실제로 커밋하고 마지막에 지운다. SQL 수를 세기 위해 검색 캐시는 끈다
+@SpringBootTest(properties = "member.search.cache.maximum-weight=0")
+class MemberRepositoryAsyncTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    Long teamId;
+    MemberSearchCondition condition;
+
+    @BeforeEach
+    void setUp() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("asyncTeam");
+            em.persist(team);
+            em.persist(new Member("async1", 10, team));
+            em.persist(new Member("async2", 20, team));
+            em.persist(new Member("async3", 30, team));
+            return team.getId();
+        });
+        condition = new MemberSearchCondition();
+        condition.setTeamName("asyncTeam");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.team.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from Team t where t.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+        });
+    }
+
+    @Test
+    public void 비동기검색_동기검색과_같은결과() {
+        PageRequest pageable = PageRequest.of(0, 2);
+
+        assertThat(memberRepository.searchAsync(condition).join())
+                .isEqualTo(memberRepository.search(condition))
+                .extracting("username").containsExactly("async1", "async2", "async3");
+        assertThat(memberRepository.searchPageSimpleAsync(condition, pageable).join())
+                .isEqualTo(memberRepository.searchPageSimple(condition, pageable));
+
+        Page<MemberTeamDto> page = memberRepository.searchPageComplexAsync(condition, pageable).join();
+        assertThat(page).isEqualTo(memberRepository.searchPageComplex(condition, pageable));
+        assertThat(page.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    public void 비동기페이지_count생략_SQL수는_요청에합산() {
+        //검색 실행기 스레드에서 나간 SQL 도 요청 스레드에서 시작한 요청으로 센다
+        sqlStatementCounter.beginRequest("asyncTest");
+        Page<MemberTeamDto> lastPage = memberRepository.searchPageComplexAsync(condition, PageRequest.of(0, 10)).join();
+        assertThat(sqlStatementCounter.endRequest()).isEqualTo(1);
+        assertThat(lastPage.getTotalElements()).isEqualTo(3);
+
+        sqlStatementCounter.beginRequest("asyncTest");
+        Page<MemberTeamDto> fullPage = memberRepository.searchPageComplexAsync(condition, PageRequest.of(0, 2)).join();
+        assertThat(sqlStatementCounter.endRequest()).isEqualTo(2);
+        assertThat(fullPage.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    public void 비동기페이지_content와count를_따로실행() {
+        String simpleOperation = "MemberRepository.searchPageSimpleAsync";
+        String complexOperation = "MemberRepository.searchPageComplexAsync";
+        long simpleCounts = timerCount(simpleOperation + ".count");
+        long complexCounts = timerCount(complexOperation + ".count");
+
+        sqlStatementCounter.beginRequest("asyncTest");
+        Page<MemberTeamDto> simple = memberRepository.searchPageSimpleAsync(condition, PageRequest.of(0, 10)).join();
+        Page<MemberTeamDto> secondPage = memberRepository.searchPageComplexAsync(condition, PageRequest.of(1, 2)).join();
+        assertThat(sqlStatementCounter.endRequest()).isEqualTo(4);
+
+        assertThat(simple.getTotalElements()).isEqualTo(3);
+        assertThat(secondPage.getContent()).extracting("username").containsExactly("async3");
+        assertThat(secondPage.getTotalElements()).isEqualTo(3);
+
+        //count 는 content 와 별도로 검색 실행기에 맡긴 작업에서 실행된다 (두 번째 페이지부터는 count 를 생략하지 않는다)
+        assertThat(timerCount(simpleOperation + ".count")).isEqualTo(simpleCounts + 1);
+        assertThat(timerCount(complexOperation + ".count")).isEqualTo(complexCounts + 1);
+    }
+
+    @Test
+    public void 비동기검색_예외전파() {
+        //unpaged 는 offset 이 없어서 실행 스레드에서 예외가 난다
+        assertThatThrownBy(() -> memberRepository.searchPageComplexAsync(condition, Pageable.unpaged()).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> memberRepository.searchPageSimpleAsync(condition, Pageable.unpaged()).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private long timerCount(String operation) {
+        Timer timer = meterRegistry.find("member.search").tags("operation", operation).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -1,21 +1,27 @@
 package study.querydsl.repository;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.support.SqlStatementCounter;
 
 import javax.persistence.EntityManager;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.support.SqlStatementAssert.assertStatementsAtMost;
 
 @SpringBootTest
 @Transactional
@@ -26,6 +32,12 @@ class MemberRepositoryTest {
     @Autowired
     MemberRepository memberRepository;
 
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
+    @Autowired
+    MemberSearchCache searchCache;
+
     @Test
     public void 기본테스트(){
         Member member = new Member("member1",10);
@@ -70,6 +82,29 @@ class MemberRepositoryTest {
         assertThat(result).extracting("username").containsExactly("member3","member4");
     }
 
+    //읽기/쓰기 트랜잭션 안에서는 캐시를 거치지 않으므로 자기 변경이 바로 보이고, 커밋 전 결과가 캐시에 남지 않는다
+    //(커밋된 데이터의 캐시 hit/무효화는 MemberSearchCacheTest)
+    @Test
+    public void 검색캐시_쓰기트랜잭션에서는_사용안함(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        List<MemberTeamDto> first = memberRepository.search(condition);
+        assertThat(first).extracting("username").containsExactly("member1");
+
+        //flush 없이도 auto flush 로 방금 저장한 회원이 보인다
+        memberRepository.save(new Member("member2",20,teamA));
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("member1","member2");
+
+        //다른 스레드(트랜잭션 밖)에서 커밋 전 결과를 캐시로 받지 않는다
+        MemberSearchKey key = MemberSearchKey.of("search", condition);
+        assertThat(CompletableFuture.supplyAsync(() -> searchCache.getIfPresent(key)).join()).isNull();
+    }
+
     @Test
     public void 페이징검색(){
         Team teamA = new Team("teamA");
@@ -99,4 +134,160 @@ class MemberRepositoryTest {
                 "member2","member3");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void 페이징검색_count생략(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1",10,teamA);
+        Member member2 = new Member("member2",20,teamA);
+        Member member3 = new Member("member3",30,teamB);
+        Member member4 = new Member("member4",40,teamB);
+
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        //첫 페이지가 다 차지 않으면 content 크기가 곧 전체 개수다 (content 쿼리 1번)
+        Page<MemberTeamDto> firstPage = assertStatementsAtMost(sqlStatementCounter, 1,
+                () -> memberRepository.searchPageComplex(condition, PageRequest.of(0, 3)));
+        assertThat(firstPage.getTotalElements()).isEqualTo(2);
+
+        //마지막 페이지면 offset + content 크기로 전체 개수를 구한다 (content 쿼리 1번)
+        MemberSearchCondition all = new MemberSearchCondition();
+        all.setAgeGoe(10);
+        all.setAgeLoe(40);
+        Page<MemberTeamDto> lastPage = assertStatementsAtMost(sqlStatementCounter, 1,
+                () -> memberRepository.searchPageComplex(all, PageRequest.of(1, 3)));
+        assertThat(lastPage.getTotalElements()).isEqualTo(4);
+        assertThat(lastPage.getContent()).extracting("username").containsExactly("member4");
+
+        //가득 찬 중간 페이지는 count 쿼리가 나간다
+        long before = sqlStatementCounter.current();
+        Page<MemberTeamDto> fullPage = memberRepository.searchPageComplex(all, PageRequest.of(0, 3));
+        assertThat(sqlStatementCounter.current() - before).isEqualTo(2);
+        assertThat(fullPage.getTotalElements()).isEqualTo(4);
+    }
+
+    @Test
+    public void 커서페이징검색(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1",10,teamA);
+        Member member2 = new Member("member2",20,teamA);
+        Member member3 = new Member("member3",30,teamB);
+        Member member4 = new Member("member4",40,teamB);
+
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        Slice<MemberTeamDto> first = memberRepository.searchSliceByCursor(condition, null, 2);
+
+        assertThat(first.hasNext()).isTrue();
+        assertThat(first.getContent()).extracting("username").containsExactly("member2","member3");
+
+        Long lastMemberId = first.getContent().get(1).getMemberId();
+        Slice<MemberTeamDto> second = memberRepository.searchSliceByCursor(condition, lastMemberId, 2);
+
+        assertThat(second.hasNext()).isFalse();
+        assertThat(second.getContent()).extracting("username").containsExactly("member4");
+    }
+
+    @Test
+    public void 커서페이징검색_size범위보정(){
+        Team cursorTeam = new Team("cursorTeam");
+        em.persist(cursorTeam);
+        em.persist(new Member("member1",10,cursorTeam));
+        em.persist(new Member("member2",20,cursorTeam));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cursorTeam");
+
+        //0 이하는 1개로
+        Slice<MemberTeamDto> zero = memberRepository.searchSliceByCursor(condition, null, 0);
+        assertThat(zero.getContent()).extracting("username").containsExactly("member1");
+        assertThat(zero.hasNext()).isTrue();
+
+        //너무 크면 상한으로 (size + 1 overflow 없음)
+        Slice<MemberTeamDto> max = memberRepository.searchSliceByCursor(condition, null, Integer.MAX_VALUE);
+        assertThat(max.getSize()).isEqualTo(MemberRepositoryImpl.MAX_CURSOR_SIZE);
+        assertThat(max.getContent()).extracting("username").containsExactly("member1","member2");
+        assertThat(max.hasNext()).isFalse();
+    }
+
+    @Test
+    public void 엔티티페이징검색_팀페치조인(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        //id 조회 + fetch join 조회 + count, 팀 이름을 읽어도 추가 쿼리가 없어야 한다
+        Page<Member> page = assertStatementsAtMost(sqlStatementCounter, 3, () -> {
+            Page<Member> result = memberRepository.searchMembers(condition, PageRequest.of(0, 2));
+            result.forEach(m -> m.getTeam().getName());
+            return result;
+        });
+
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(page.getContent()).extracting("username").containsExactly("member2","member3");
+        assertThat(page.getContent()).allMatch(m -> Hibernate.isInitialized(m.getTeam()));
+    }
+
+    @Test
+    public void 엔티티페이징검색_정렬(){
+        Team team = new Team("sortTeam");
+        em.persist(team);
+
+        em.persist(new Member("sort1",30,team));
+        em.persist(new Member("sort2",10,team));
+        em.persist(new Member("sort3",30,team));
+        em.persist(new Member("sort4",20,team));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sortTeam");
+
+        //나이가 같으면 id 순
+        Page<Member> page = memberRepository.searchMembers(condition, PageRequest.of(0, 3, Sort.by(Sort.Direction.DESC, "age")));
+        assertThat(page.getContent()).extracting("username").containsExactly("sort1","sort3","sort4");
+        assertThat(page.getTotalElements()).isEqualTo(4);
+
+        assertThat(memberRepository.searchMembers(condition, PageRequest.of(1, 3, Sort.by("username").descending()))
+                .getContent()).extracting("username").containsExactly("sort1");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> memberRepository.searchMembers(condition, PageRequest.of(0, 3, Sort.by("team.name"))));
+    }
+
+}
@@ -0,0 +1,89 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//캐시는 트랜잭션 밖/읽기 전용 조회에서만 쓰므로 실제로 커밋하고 마지막에 지운다
+@SpringBootTest
+class MemberSearchCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberSearchCache searchCache;
+
+    Long teamId;
+
+    @AfterEach
+    void cleanUp() {
+        if (teamId == null) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.team.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from Team t where t.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+        });
+    }
+
+    @Test
+    public void 검색캐시_회원저장시_무효화() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("cacheTeam");
+            em.persist(team);
+            em.persist(new Member("cacheMember1", 10, team));
+            return team.getId();
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cacheTeam");
+
+        List<MemberTeamDto> first = memberRepository.search(condition);
+        assertThat(first).extracting("username").containsExactly("cacheMember1");
+        assertThat(memberRepository.search(condition)).isSameAs(first);
+
+        transactionTemplate.executeWithoutResult(status ->
+                memberRepository.save(new Member("cacheMember2", 20, em.find(Team.class, teamId))));
+
+        assertThat(memberRepository.search(condition)).extracting("username")
+                .containsExactly("cacheMember1", "cacheMember2");
+    }
+
+    @Test
+    public void 조회도중_무효화되면_결과를_저장하지않음() {
+        MemberSearchKey key = MemberSearchKey.of("cacheTest", new MemberSearchCondition());
+
+        //조회하는 사이에 evictAll 이 있었으면 지난 결과는 들어가지 않는다
+        List<String> stale = searchCache.get(key, () -> {
+            searchCache.evictAll();
+            return List.of("stale");
+        });
+        assertThat(stale).containsExactly("stale");
+        assertThat(searchCache.<Object>getIfPresent(key)).isNull();
+
+        List<String> fresh = searchCache.get(key, () -> List.of("fresh"));
+        assertThat(searchCache.<List<String>>getIfPresent(key)).isSameAs(fresh);
+    }
+}
@@ -0,0 +1,124 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//트랜잭션 안에서는 합치지 않으므로 테스트에 @Transactional 을 붙이지 않는다
+@SpringBootTest
+class MemberSearchCoalescerTest {
+
+    @Autowired
+    MemberSearchCoalescer searchCoalescer;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 동시에들어온_같은검색은_한번만실행() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        double before = coalesced("coalesceTest");
+
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> searchCoalescer.search("coalesceTest", condition, () -> {
+                    executed.incrementAndGet();
+                    await(release);
+                    return List.of("member1");
+                })));
+            }
+
+            //첫 요청이 끝나기 전에 나머지 요청이 모두 합류할 때까지 기다린다
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalesced("coalesceTest") - before < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (Future<List<String>> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).containsExactly("member1");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(executed).hasValue(1);
+        assertThat(coalesced("coalesceTest") - before).isEqualTo(callers - 1);
+    }
+
+    @Test
+    public void 비동기검색_끝난뒤에는_새로실행() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        PageRequest pageable = PageRequest.of(0, 10);
+        AtomicInteger executed = new AtomicInteger();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        CompletableFuture<String> first = searchCoalescer.searchAsync("coalesceAsyncTest", condition, pageable, () -> {
+            executed.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> second = searchCoalescer.searchAsync("coalesceAsyncTest", condition, pageable, () -> {
+            executed.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        assertThat(second).isNotDone();
+
+        //다른 페이지나 트랜잭션 안의 호출은 합치지 않는다
+        assertThat(searchCoalescer.searchAsync("coalesceAsyncTest", condition, PageRequest.of(1, 10),
+                () -> CompletableFuture.completedFuture("page1")).join()).isEqualTo("page1");
+        transactionTemplate.executeWithoutResult(status ->
+                assertThat(searchCoalescer.searchAsync("coalesceAsyncTest", condition, pageable,
+                        () -> CompletableFuture.completedFuture("inTx")).join()).isEqualTo("inTx"));
+
+        pending.complete("first");
+        assertThat(first.join()).isEqualTo("first");
+        assertThat(second.join()).isEqualTo("first");
+
+        CompletableFuture<String> third = searchCoalescer.searchAsync("coalesceAsyncTest", condition, pageable, () -> {
+            executed.incrementAndGet();
+            return CompletableFuture.completedFuture("third");
+        });
+        assertThat(third.join()).isEqualTo("third");
+        assertThat(executed).hasValue(2);
+    }
+
+    private double coalesced(String operation) {
+        Counter counter = registry.find("member.search.coalesced").tag("operation", operation).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
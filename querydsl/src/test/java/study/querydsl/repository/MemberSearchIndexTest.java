@@ -0,0 +1,94 @@
+package study.querydsl.repository;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 검색 조건 모양별 JPQL 을 SQL 로 바꿔서 H2 EXPLAIN 으로 인덱스를 타는지 본다.
+ */
+@SpringBootTest
+@Transactional
+class MemberSearchIndexTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void 검색조건_모양별_인덱스사용(){
+        SessionFactoryImplementor sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+
+        //조건이 하나도 없는 모양(mask 0)은 전체 조회라 제외
+        for (int mask = 1; mask < 16; mask++) {
+            MemberSearchCondition condition = condition(mask);
+            MemberSearchTemplate template = MemberSearchTemplate.of(condition);
+
+            for (String jpql : new String[]{template.getSelectJpql(), template.getCountJpql()}) {
+                String sql = sessionFactory.getQueryPlanCache()
+                        .getHQLQueryPlan(jpql, false, Collections.emptyMap())
+                        .getSqlStrings()[0];
+
+                String plan = explain(sql, parameters(condition));
+
+                assertThat(plan).as("mask %d: %s", mask, plan).doesNotContainIgnoringCase("tableScan");
+            }
+        }
+    }
+
+    private MemberSearchCondition condition(int mask) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername((mask & 1) != 0 ? "member1" : null);
+        condition.setTeamName((mask & 2) != 0 ? "teamA" : null);
+        condition.setAgeGoe((mask & 4) != 0 ? 10 : null);
+        condition.setAgeLoe((mask & 8) != 0 ? 40 : null);
+        return condition;
+    }
+
+    //JPQL where 절과 같은 순서 (username, teamName, ageGoe, ageLoe)
+    private List<Object> parameters(MemberSearchCondition condition) {
+        List<Object> parameters = new ArrayList<>();
+        if (condition.getUsername() != null) {
+            parameters.add(condition.getUsername());
+        }
+        if (condition.getTeamName() != null) {
+            parameters.add(condition.getTeamName());
+        }
+        if (condition.getAgeGoe() != null) {
+            parameters.add(condition.getAgeGoe());
+        }
+        if (condition.getAgeLoe() != null) {
+            parameters.add(condition.getAgeLoe());
+        }
+        return parameters;
+    }
+
+    private String explain(String sql, List<Object> parameters) {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("explain " + sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    ps.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    while (rs.next()) {
+                        plan.append(rs.getString(1));
+                    }
+                    return plan.toString();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//인덱스는 커밋된 변경만 반영하므로 실제로 커밋하고 마지막에 지운다
+@SpringBootTest
+class MemberUsernameIndexTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberBulkOperations memberBulkOperations;
+
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+
+    Long teamId;
+
+    @AfterEach
+    void cleanUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.team.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from Team t where t.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+        });
+    }
+
+    @Test
+    public void username_prefix_contains_검색() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("indexTeam");
+            em.persist(team);
+            em.persist(new Member("idxAlice", 10, team));
+            em.persist(new Member("idxAlfred", 20, team));
+            em.persist(new Member("idxBob", 30, team));
+            em.persist(new Member("idx_100%", 40, team));
+            return team.getId();
+        });
+
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("idxAl");
+        assertThat(usernameIndex.resolve(prefix)).hasSize(2);
+        assertThat(memberRepository.search(prefix)).extracting("username")
+                .containsExactlyInAnyOrder("idxAlice", "idxAlfred");
+
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("lfr");
+        contains.setAgeGoe(15);
+        assertThat(memberJpaRepository.searchByWhereParam(contains)).extracting("username")
+                .containsExactly("idxAlfred");
+
+        //like 특수문자는 문자 그대로 찾는다
+        MemberSearchCondition special = new MemberSearchCondition();
+        special.setUsernameContains("_100%");
+        assertThat(memberRepository.search(special)).extracting("username").containsExactly("idx_100%");
+
+        //인덱스 결과와 like(searchByBuilder) 결과가 같아야 한다
+        MemberSearchCondition both = new MemberSearchCondition();
+        both.setUsernamePrefix("idx");
+        both.setUsernameContains("ice");
+        List<MemberTeamDto> byIndex = memberRepository.search(both);
+        assertThat(byIndex).extracting("username").containsExactly("idxAlice");
+        assertThat(byIndex).containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(both));
+    }
+
+    @Test
+    public void username_변경과_벌크삭제_반영() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("indexTeam");
+            em.persist(team);
+            em.persist(new Member("idxCarol", 10, team));
+            em.persist(new Member("idxDave", 20, team));
+            return team.getId();
+        });
+
+        transactionTemplate.executeWithoutResult(status -> em
+                .createQuery("select m from Member m where m.username = 'idxCarol'", Member.class)
+                .getSingleResult()
+                .setUsername("idxCaroline"));
+
+        MemberSearchCondition renamed = new MemberSearchCondition();
+        renamed.setUsernameContains("oline");
+        assertThat(memberRepository.search(renamed)).extracting("username").containsExactly("idxCaroline");
+
+        MemberSearchCondition all = new MemberSearchCondition();
+        all.setUsernamePrefix("idxDa");
+        assertThat(memberBulkOperations.delete(all)).isEqualTo(1);
+
+        //후보가 없으면 인덱스를 믿지 않고 like 로 검색한다
+        assertThat(usernameIndex.resolve(all)).isNull();
+        assertThat(memberRepository.search(all)).isEmpty();
+    }
+
+    @Test
+    public void 인덱스에없는_회원도_검색되고_refresh로_반영() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("indexTeam");
+            em.persist(team);
+            return team.getId();
+        });
+        //다른 인스턴스나 SQL 로 직접 넣은 회원처럼 리스너를 거치지 않는다
+        transactionTemplate.executeWithoutResult(status -> em
+                .createNativeQuery("insert into member (member_id, username, age, team_id)" +
+                        " values (next value for member_seq, 'idxEve', 10, :teamId)")
+                .setParameter("teamId", teamId)
+                .executeUpdate());
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix("idxEv");
+        assertThat(usernameIndex.resolve(condition)).isNull();
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("idxEve");
+
+        usernameIndex.refresh();
+        assertThat(usernameIndex.resolve(condition)).hasSize(1);
+        assertThat(memberJpaRepository.searchByWhereParam(condition)).extracting("username").containsExactly("idxEve");
+    }
+
+    @Test
+    public void 쓰기트랜잭션에서는_인덱스를_쓰지않음() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("indexTeam");
+            em.persist(team);
+            em.persist(new Member("idxFrank", 10, team));
+            return team.getId();
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix("idxFr");
+        assertThat(usernameIndex.resolve(condition)).hasSize(1);
+
+        //커밋 전인 자기 변경은 인덱스에 없으므로 like 로 찾는다
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("idxFred", 20, em.find(Team.class, teamId)));
+            assertThat(usernameIndex.resolve(condition)).isNull();
+            assertThat(memberJpaRepository.searchByWhereParam(condition)).extracting("username")
+                    .containsExactlyInAnyOrder("idxFrank", "idxFred");
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.SqlStatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class TeamRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
+    @Test
+    public void 팀과회원_한번에조회(){
+        List<Long> teamIds = createTeams(5);
+
+        long before = sqlStatementCounter.current();
+        List<Team> teams = teamRepository.findTeamsWithMembers(teamIds);
+        int memberCount = teams.stream().mapToInt(t -> t.getMembers().size()).sum();
+
+        assertThat(teams).hasSize(5);
+        assertThat(memberCount).isEqualTo(10);
+        assertThat(sqlStatementCounter.current() - before).isEqualTo(1);
+    }
+
+    @Test
+    public void 회원컬렉션_배치로딩_팀수와무관(){
+        long fewTeams = statementsToLoadMembers(createTeams(2));
+        long manyTeams = statementsToLoadMembers(createTeams(8));
+
+        //팀 조회 1번 + members in 절 1번
+        assertThat(fewTeams).isEqualTo(2);
+        assertThat(manyTeams).isEqualTo(fewTeams);
+    }
+
+    private long statementsToLoadMembers(List<Long> teamIds) {
+        long before = sqlStatementCounter.current();
+        List<Team> teams = em.createQuery("select t from Team t where t.id in :ids", Team.class)
+                .setParameter("ids", teamIds)
+                .getResultList();
+        for (Team team : teams) {
+            team.getMembers().size();
+        }
+        return sqlStatementCounter.current() - before;
+    }
+
+    private List<Long> createTeams(int count) {
+        List<Long> teamIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Team team = new Team("team" + i);
+            em.persist(team);
+            em.persist(new Member("member" + i + "_1", 10, team));
+            em.persist(new Member("member" + i + "_2", 20, team));
+            teamIds.add(team.getId());
+        }
+        em.flush();
+        em.clear();
+        return teamIds;
+    }
+}
@@ -0,0 +1,193 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.entity.TeamStats;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//롤업은 커밋 직전에 반영되므로 롤백 테스트가 아니라 실제로 커밋하고 마지막에 지운다
+@SpringBootTest
+class TeamStatsRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+
+    Long teamId;
+
+    @AfterEach
+    void cleanUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.team.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from Team t where t.id = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+        });
+    }
+
+    @Test
+    public void 회원추가삭제시_팀통계갱신() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("statsTeam");
+            em.persist(team);
+            em.persist(new Member("stats1", 10, team));
+            em.persist(new Member("stats2", 20, team));
+            em.persist(new Member("stats3", 60, team));
+            return team.getId();
+        });
+
+        TeamStatsDto stats = teamStatsRepository.findByTeamId(teamId).get();
+        assertThat(stats.getTeamName()).isEqualTo("statsTeam");
+        assertThat(stats.getMemberCount()).isEqualTo(3);
+        assertThat(stats.getAverageAge()).isEqualTo(30.0);
+        assertThat(stats.getMinAge()).isEqualTo(10);
+        assertThat(stats.getMaxAge()).isEqualTo(60);
+
+        //최소 나이 회원 삭제 + 나이 변경
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Member member : em.createQuery("select m from Member m where m.team.id = :teamId", Member.class)
+                    .setParameter("teamId", teamId)
+                    .getResultList()) {
+                if (member.getAge() == 10) {
+                    em.remove(member);
+                } else if (member.getAge() == 60) {
+                    member.setAge(40);
+                }
+            }
+        });
+
+        stats = teamStatsRepository.findByTeamId(teamId).get();
+        assertThat(stats.getMemberCount()).isEqualTo(2);
+        assertThat(stats.getAverageAge()).isEqualTo(30.0);
+        assertThat(stats.getMinAge()).isEqualTo(20);
+        assertThat(stats.getMaxAge()).isEqualTo(40);
+
+        //롤업을 처음부터 다시 만들어도 같은 값
+        teamStatsRepository.rebuild();
+        assertThat(teamStatsRepository.findByTeamId(teamId).get()).isEqualTo(stats);
+    }
+
+    @Test
+    public void 통계row가없으면_새로만들고_다시계산() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("statsTeam");
+            em.persist(team);
+            em.persist(new Member("stats1", 10, team));
+            em.persist(new Member("stats2", 30, team));
+            return team.getId();
+        });
+        transactionTemplate.executeWithoutResult(status -> em
+                .createQuery("delete from TeamStats s where s.teamId = :teamId")
+                .setParameter("teamId", teamId)
+                .executeUpdate());
+        assertThat(teamStatsRepository.findByTeamId(teamId)).isEmpty();
+
+        //증감만 반영하면 회원 1명으로 잡히므로, 기존 회원까지 다시 센 값이어야 한다
+        transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Member("stats3", 50, em.find(Team.class, teamId))));
+
+        TeamStatsDto stats = teamStatsRepository.findByTeamId(teamId).get();
+        assertThat(stats.getMemberCount()).isEqualTo(3);
+        assertThat(stats.getAverageAge()).isEqualTo(30.0);
+        assertThat(stats.getMinAge()).isEqualTo(10);
+        assertThat(stats.getMaxAge()).isEqualTo(50);
+    }
+
+    @Test
+    public void refresh_동시에불러도_없는row는_한번만생성() {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("statsTeam");
+            em.persist(team);
+            return team.getId();
+        });
+        //이벤트 없이 회원을 넣고 통계 row 도 지운다
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createNativeQuery("insert into member (member_id, username, age, team_id)" +
+                            " values (next value for member_seq, 'stats1', 10, :teamId)")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createNativeQuery("insert into member (member_id, username, age, team_id)" +
+                            " values (next value for member_seq, 'stats2', 30, :teamId)")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+            em.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                    .setParameter("teamId", teamId)
+                    .executeUpdate();
+        });
+
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            refreshes.add(CompletableFuture.runAsync(() -> teamStatsRepository.refresh(List.of(teamId))));
+        }
+        CompletableFuture.allOf(refreshes.toArray(new CompletableFuture[0])).join();
+
+        TeamStatsDto stats = teamStatsRepository.findByTeamId(teamId).get();
+        assertThat(stats.getMemberCount()).isEqualTo(2);
+        assertThat(stats.getAverageAge()).isEqualTo(20.0);
+        assertThat(stats.getMinAge()).isEqualTo(10);
+        assertThat(stats.getMaxAge()).isEqualTo(30);
+    }
+
+    @Test
+    public void refresh_잠근뒤집계하므로_동시에커밋된증감을_덮어쓰지않음() throws InterruptedException {
+        teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("statsTeam");
+            em.persist(team);
+            em.persist(new Member("stats1", 10, team));
+            return team.getId();
+        });
+
+        //다른 트랜잭션이 회원을 추가하고 통계 row 를 잠근 채로 잠시 커밋을 미룬다
+        CountDownLatch locked = new CountDownLatch(1);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("stats2", 30, em.find(Team.class, teamId)));
+            em.flush();
+            em.find(TeamStats.class, teamId, LockModeType.PESSIMISTIC_WRITE);
+            locked.countDown();
+            sleep(300);
+        }));
+        assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //refresh 는 잠금을 기다렸다가 커밋된 회원까지 세므로, 커밋 때 반영된 +1 을 덮어쓰지 않는다
+        teamStatsRepository.refresh(List.of(teamId));
+        writer.join();
+
+        TeamStatsDto stats = teamStatsRepository.findByTeamId(teamId).get();
+        assertThat(stats.getMemberCount()).isEqualTo(2);
+        assertThat(stats.getAverageAge()).isEqualTo(20.0);
+        assertThat(stats.getMaxAge()).isEqualTo(30);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
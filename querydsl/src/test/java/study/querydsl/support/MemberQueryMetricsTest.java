@@ -0,0 +1,137 @@
+package study.querydsl.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//지표는 테스트마다 새 SimpleMeterRegistry 에 남기고, SQL 수는 실제 hibernate 에 등록된 카운터로 센다
+@SpringBootTest
+@Transactional
+class MemberQueryMetricsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
+    SimpleMeterRegistry registry;
+    MemberQueryMetrics metrics;
+    MemberSearchCondition condition;
+
+    @BeforeEach
+    void setUp() {
+        Team team = new Team("metricsTeam");
+        em.persist(team);
+        em.persist(new Member("metricsMember1", 10, team));
+        em.persist(new Member("metricsMember2", 20, team));
+        em.flush();
+        em.clear();
+
+        registry = new SimpleMeterRegistry();
+        metrics = new MemberQueryMetrics(registry, sqlStatementCounter);
+        condition = new MemberSearchCondition();
+        condition.setTeamName("metricsTeam");
+        condition.setAgeGoe(10);
+    }
+
+    @Test
+    public void 조회_실행시간_row수_SQL수_기록() {
+        List<Member> result = metrics.record("test.search", condition, this::findMembers);
+        assertThat(result).hasSize(2);
+
+        assertThat(registry.get("member.search")
+                .tags("operation", "test.search", "filters", "teamName,ageGoe",
+                        "countQuery", "false", "exception", "none")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.get("member.search.rows")
+                .tags("operation", "test.search", "filters", "teamName,ageGoe", "countQuery", "false")
+                .summary().totalAmount()).isEqualTo(2);
+        assertThat(registry.get("member.search.statements")
+                .tags("operation", "test.search", "filters", "teamName,ageGoe", "countQuery", "false")
+                .summary().totalAmount()).isEqualTo(1);
+    }
+
+    @Test
+    public void 페이징조회_count쿼리실행_태그() {
+        PageRequest pageable = PageRequest.of(0, 1);
+        Page<Member> page = metrics.record("test.page", condition, () -> {
+            List<Member> content = em.createQuery(
+                            "select m from Member m where m.team.name = :teamName and m.age >= :age order by m.id", Member.class)
+                    .setParameter("teamName", "metricsTeam")
+                    .setParameter("age", 10)
+                    .setMaxResults(pageable.getPageSize())
+                    .getResultList();
+            metrics.countQueryExecuted();
+            Long total = em.createQuery(
+                            "select count(m) from Member m where m.team.name = :teamName and m.age >= :age", Long.class)
+                    .setParameter("teamName", "metricsTeam")
+                    .setParameter("age", 10)
+                    .getSingleResult();
+            return new PageImpl<>(content, pageable, total);
+        });
+        assertThat(page.getTotalElements()).isEqualTo(2);
+
+        //row 수는 전체 건수가 아니라 페이지에 담긴 건수
+        assertThat(registry.get("member.search.rows")
+                .tags("operation", "test.page", "countQuery", "true")
+                .summary().totalAmount()).isEqualTo(1);
+        assertThat(registry.get("member.search.statements")
+                .tags("operation", "test.page", "countQuery", "true")
+                .summary().totalAmount()).isEqualTo(2);
+        assertThat(registry.get("member.search")
+                .tags("operation", "test.page", "countQuery", "true")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void 예외는_exception태그로_기록하고_row수는_남기지않음() {
+        assertThatThrownBy(() -> metrics.record("test.fail", new MemberSearchCondition(), () -> {
+            throw new IllegalArgumentException("fail");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(registry.get("member.search")
+                .tags("operation", "test.fail", "filters", "none", "exception", "IllegalArgumentException")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.find("member.search.rows").summary()).isNull();
+        assertThat(registry.get("member.search.statements")
+                .tags("operation", "test.fail")
+                .summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void 결과없는조회는_recordRows로_row수기록() {
+        metrics.record("test.export", condition, () -> {
+            findMembers();
+            return null;
+        });
+        assertThat(registry.find("member.search.rows").summary()).isNull();
+
+        metrics.recordRows("test.export", condition, 2);
+        assertThat(registry.get("member.search.rows")
+                .tags("operation", "test.export", "filters", "teamName,ageGoe", "countQuery", "false")
+                .summary().totalAmount()).isEqualTo(2);
+    }
+
+    private List<Member> findMembers() {
+        return em.createQuery("select m from Member m where m.team.name = :teamName and m.age >= :age", Member.class)
+                .setParameter("teamName", "metricsTeam")
+                .setParameter("age", 10)
+                .getResultList();
+    }
+}
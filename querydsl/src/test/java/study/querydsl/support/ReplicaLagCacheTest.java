@@ -0,0 +1,123 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * replica 가 따라오기 전에 다른 사용자가 읽은 오래된 결과가 검색 캐시/2차 캐시에 남아
+ * 쓴 사람에게 돌아가지 않는지 본다. (캐시를 켜야 하므로 ReplicationRoutingDataSourceTest 와 DB 를 나눈다)
+ */
+@SpringBootTest(properties = {
+        "datasource.routing.enabled=true",
+        "datasource.routing.replica-lag-tolerance-ms=" + ReplicaLagCacheTest.LAG_TOLERANCE_MS,
+        "datasource.routing.primary.jdbc-url=" + ReplicaLagCacheTest.PRIMARY_URL,
+        "datasource.routing.primary.username=sa",
+        "datasource.routing.replica.jdbc-url=" + ReplicaLagCacheTest.REPLICA_URL,
+        "datasource.routing.replica.username=sa"
+})
+class ReplicaLagCacheTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:lag_cache_primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:lag_cache_replica;DB_CLOSE_DELAY=-1";
+    static final long LAG_TOLERANCE_MS = 1000;
+
+    @TestConfiguration
+    static class ReplicaSchemaConfig {
+
+        @Bean
+        ApplicationListener<ContextRefreshedEvent> replicaSchemaInitializer() {
+            return event -> replicate();
+        }
+    }
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @AfterEach
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'lagCache%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name = 'lagCacheTeam'").executeUpdate();
+        });
+        replicate();
+    }
+
+    @Test
+    public void 지연중_다른사용자가_replica에서읽은결과는_캐시에남지않음() throws Exception {
+        TransactionTemplate writeTransaction = new TransactionTemplate(transactionManager);
+        Long memberId = writeTransaction.execute(status -> {
+            Team team = new Team("lagCacheTeam");
+            em.persist(team);
+            Member member = new Member("lagCacheMember", 10, team);
+            em.persist(member);
+            return member.getId();
+        });
+        replicate();
+        Thread.sleep(LAG_TOLERANCE_MS + 100);
+
+        //쓴 사람(이 스레드)이 나이를 바꾼다. 2차 캐시는 만료된 것처럼 비워서 다음 조회가 DB 에서 다시 채우게 한다
+        writeTransaction.executeWithoutResult(status -> em.find(Member.class, memberId).setAge(20));
+        emf.getCache().evict(Member.class);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("lagCacheMember");
+
+        //다른 사용자는 아직 복제되지 않은 replica 에서 옛날 나이를 읽는다
+        ExecutorService otherUser = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(otherUser.submit(() -> memberRepository.search(condition)).get())
+                    .extracting("age").containsExactly(10);
+            assertThat(otherUser.submit(() -> readOnly(() -> memberJpaRepository.findById(memberId).get().getAge())).get())
+                    .isEqualTo(10);
+        } finally {
+            otherUser.shutdown();
+        }
+
+        //쓴 사람은 primary 에서 읽고, 다른 사용자가 읽은 옛날 값이 캐시에서 나오지 않는다
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactly(20);
+        assertThat(readOnly(() -> memberJpaRepository.findById(memberId).get().getAge())).isEqualTo(20);
+    }
+
+    private <T> T readOnly(Supplier<T> query) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> query.get());
+    }
+
+    private static void replicate() {
+        ReplicationRoutingDataSourceTest.copy(PRIMARY_URL, REPLICA_URL);
+    }
+}
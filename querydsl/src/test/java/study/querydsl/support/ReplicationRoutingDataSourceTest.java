@@ -0,0 +1,244 @@
+package study.querydsl.support;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.servlet.http.Cookie;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 메모리 H2 두 개를 primary/replica 로 쓴다.
+ * 복제는 없으므로 replicate() 로 primary 전체를 replica 에 복사해서 복제가 따라잡은 상태를 흉내낸다.
+ */
+@SpringBootTest(properties = {
+        "datasource.routing.enabled=true",
+        "datasource.routing.replica-lag-tolerance-ms=" + ReplicationRoutingDataSourceTest.LAG_TOLERANCE_MS,
+        "datasource.routing.primary.jdbc-url=" + ReplicationRoutingDataSourceTest.PRIMARY_URL,
+        "datasource.routing.primary.username=sa",
+        "datasource.routing.replica.jdbc-url=" + ReplicationRoutingDataSourceTest.REPLICA_URL,
+        "datasource.routing.replica.username=sa",
+        "member.search.cache.maximum-weight=0"
+})
+class ReplicationRoutingDataSourceTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing_primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing_replica;DB_CLOSE_DELAY=-1";
+    static final long LAG_TOLERANCE_MS = 300;
+
+    //ddl-auto 로 primary 에 만든 스키마를 기동이 끝나기 전에(username 인덱스 로딩 전에) replica 에도 만든다
+    @TestConfiguration
+    static class ReplicaSchemaConfig {
+
+        @Bean
+        ApplicationListener<ContextRefreshedEvent> replicaSchemaInitializer() {
+            return event -> replicate();
+        }
+    }
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @AfterEach
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> em
+                .createQuery("delete from Member m where m.username like 'routing%'")
+                .executeUpdate());
+        replicate();
+    }
+
+    @Test
+    public void 읽기전용트랜잭션은_replica_쓰기트랜잭션은_primary() throws InterruptedException {
+        waitForLagTolerance();
+
+        assertThat(connectionUrl(true)).contains("routing_replica");
+        assertThat(connectionUrl(false)).contains("routing_primary");
+    }
+
+    @Test
+    public void 쓰기직후에는_primary_허용지연이후에는_replica에서_읽기() throws InterruptedException {
+        TransactionTemplate writeTransaction = new TransactionTemplate(transactionManager);
+        writeTransaction.executeWithoutResult(status -> memberJpaRepository.save(new Member("routingMember", 10)));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("routingMember");
+
+        //커밋 직후에는 읽기 전용이어도 primary 로 가서 방금 저장한 회원이 보인다
+        assertThat(connectionUrl(true)).contains("routing_primary");
+        assertThat(memberJpaRepository.searchByWhereParam(condition)).extracting("username")
+                .containsExactly("routingMember");
+
+        //허용 지연이 지나면 replica 에서 읽으므로 아직 복제되지 않은 회원은 안 보인다
+        waitForLagTolerance();
+        assertThat(memberJpaRepository.searchByWhereParam(condition)).isEmpty();
+        assertThat(memberJpaRepository.findByUsername("routingMember")).isEmpty();
+
+        replicate();
+        assertThat(memberJpaRepository.searchByWhereParam(condition)).extracting("username")
+                .containsExactly("routingMember");
+        assertThat(memberJpaRepository.findByUsername("routingMember")).hasSize(1);
+    }
+
+    @Test
+    public void 검색_페이징_비동기검색도_허용지연이후에는_replica에서_읽기() throws InterruptedException {
+        saveMember("routingSearch");
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("routingSearch");
+        PageRequest pageable = PageRequest.of(0, 10);
+
+        waitForLagTolerance();
+        assertThat(memberRepository.search(condition)).isEmpty();
+        assertThat(memberRepository.searchPageSimple(condition, pageable).getContent()).isEmpty();
+        assertThat(memberRepository.searchPageComplex(condition, pageable).getContent()).isEmpty();
+        assertThat(memberRepository.searchAsync(condition).join()).isEmpty();
+        assertThat(memberRepository.searchPageSimpleAsync(condition, pageable).join().getContent()).isEmpty();
+        assertThat(memberRepository.searchPageComplexAsync(condition, pageable).join().getContent()).isEmpty();
+
+        replicate();
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("routingSearch");
+        assertThat(memberRepository.searchPageSimple(condition, pageable).getContent()).hasSize(1);
+        assertThat(memberRepository.searchPageComplex(condition, pageable).getContent()).hasSize(1);
+        assertThat(memberRepository.searchAsync(condition).join()).hasSize(1);
+        assertThat(memberRepository.searchPageSimpleAsync(condition, pageable).join().getContent()).hasSize(1);
+        assertThat(memberRepository.searchPageComplexAsync(condition, pageable).join().getContent()).hasSize(1);
+    }
+
+    @Test
+    public void 비동기검색은_호출한스레드의_쓰기직후_primary에서_읽기() {
+        saveMember("routingAsync");
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("routingAsync");
+
+        //검색 실행기 스레드도 호출한 쪽의 마지막 쓰기 시각을 보고 primary 로 간다
+        assertThat(memberRepository.searchAsync(condition).join()).extracting("username")
+                .containsExactly("routingAsync");
+        assertThat(memberRepository.searchPageSimpleAsync(condition, PageRequest.of(0, 10)).join().getContent())
+                .hasSize(1);
+    }
+
+    @Test
+    public void 다른스레드의_쓰기는_replica라우팅에_영향없음() throws InterruptedException {
+        waitForLagTolerance();
+        CompletableFuture.runAsync(() -> saveMember("routingOther")).join();
+
+        assertThat(connectionUrl(true)).contains("routing_replica");
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("routingOther");
+        assertThat(memberRepository.search(condition)).isEmpty();
+    }
+
+    @Test
+    public void 웹요청은_쿠키로_마지막쓰기시각을_이어감() throws InterruptedException {
+        waitForLagTolerance();
+        try {
+            //쿠키가 없는 요청은 replica
+            bindRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+            assertThat(connectionUrl(true)).contains("routing_replica");
+
+            //쓰기를 커밋하면 응답에 쿠키를 붙이고, 같은 요청의 읽기는 primary
+            MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+            bindRequest(new MockHttpServletRequest(), writeResponse);
+            saveMember("routingCookie");
+            assertThat(connectionUrl(true)).contains("routing_primary");
+            Cookie lastWrite = writeResponse.getCookie(ReplicationRoutingDataSource.LAST_WRITE_COOKIE);
+            assertThat(lastWrite).isNotNull();
+            assertThat(lastWrite.isHttpOnly()).isTrue();
+
+            //다음 요청이 쿠키를 가져오면 허용 지연 동안은 primary
+            MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+            nextRequest.setCookies(lastWrite);
+            bindRequest(nextRequest, new MockHttpServletResponse());
+            assertThat(connectionUrl(true)).contains("routing_primary");
+
+            waitForLagTolerance();
+            assertThat(connectionUrl(true)).contains("routing_replica");
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private void saveMember(String username) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                memberJpaRepository.save(new Member(username, 10)));
+    }
+
+    private static void bindRequest(MockHttpServletRequest request, MockHttpServletResponse response) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    }
+
+    private String connectionUrl(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> em.unwrap(Session.class)
+                .doReturningWork(connection -> connection.getMetaData().getURL()));
+    }
+
+    private static void waitForLagTolerance() throws InterruptedException {
+        Thread.sleep(LAG_TOLERANCE_MS + 100);
+    }
+
+    private static void replicate() {
+        copy(PRIMARY_URL, REPLICA_URL);
+    }
+
+    //primary 의 스키마와 데이터를 그대로 replica 에 옮긴다
+    static void copy(String primaryUrl, String replicaUrl) {
+        try (Connection primary = DriverManager.getConnection(primaryUrl, "sa", "");
+             Connection replica = DriverManager.getConnection(replicaUrl, "sa", "")) {
+            List<String> script = new ArrayList<>();
+            try (Statement statement = primary.createStatement();
+                 ResultSet rs = statement.executeQuery("script")) {
+                while (rs.next()) {
+                    String sql = rs.getString(1);
+                    if (!sql.startsWith("--")) {
+                        script.add(sql);
+                    }
+                }
+            }
+            try (Statement statement = replica.createStatement()) {
+                statement.execute("drop all objects");
+                for (String sql : script) {
+                    statement.execute(sql);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("replica 복사 실패", e);
+        }
+    }
+}
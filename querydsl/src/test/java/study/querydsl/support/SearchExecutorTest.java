@@ -0,0 +1,143 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchExecutorTest {
+
+    @Test
+    public void 동시실행수_제한() {
+        SearchExecutor executor = new SearchExecutor(Executors.newFixedThreadPool(4), 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try {
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                }, executor));
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(maxRunning).hasValue(2);
+    }
+
+    @Test
+    public void 큐가차면_호출스레드에서_실행() throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.CallerRunsPolicy());
+        SearchExecutor executor = new SearchExecutor(pool, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            //첫 작업이 스레드를 잡고, 두 번째 작업이 큐를 채운다
+            CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+                started.countDown();
+                await(release);
+            }, executor);
+            started.await(5, TimeUnit.SECONDS);
+            CompletableFuture<Thread> second = CompletableFuture.supplyAsync(Thread::currentThread, executor);
+
+            //세 번째 작업은 거절되어 호출한 스레드에서 바로 실행된다
+            CompletableFuture<Thread> third = CompletableFuture.supplyAsync(Thread::currentThread, executor);
+            assertThat(third).isCompletedWithValue(Thread.currentThread());
+
+            release.countDown();
+            first.join();
+            assertThat(second.join()).isNotEqualTo(Thread.currentThread());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void 대기작업이_queueCapacity를_넘으면_호출스레드에서_실행() throws InterruptedException {
+        //가상 스레드처럼 작업마다 스레드를 만드는 실행기에서도 permit 을 기다리는 작업 수를 묶는다
+        SearchExecutor executor = new SearchExecutor(Executors.newCachedThreadPool(), 1, 1, task -> task);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            //첫 작업이 permit 을 잡고, 두 번째 작업이 대기 자리를 채운다
+            CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+                started.countDown();
+                await(release);
+            }, executor);
+            started.await(5, TimeUnit.SECONDS);
+            CompletableFuture<Thread> second = CompletableFuture.supplyAsync(Thread::currentThread, executor);
+
+            //세 번째 작업은 제출한 스레드에서 permit 을 기다렸다가 실행된다
+            AtomicReference<Thread> third = new AtomicReference<>();
+            Thread submitter = new Thread(() ->
+                    third.set(CompletableFuture.supplyAsync(Thread::currentThread, executor).join()));
+            submitter.start();
+            while (submitter.getState() != Thread.State.WAITING && submitter.isAlive()) {
+                Thread.sleep(5);
+            }
+            assertThat(third.get()).isNull();
+
+            release.countDown();
+            submitter.join(5000);
+            first.join();
+            assertThat(third).hasValue(submitter);
+            assertThat(second.join()).isNotEqualTo(submitter);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void 예외는_future로_전파되고_permit은_반환() {
+        SearchExecutor executor = new SearchExecutor(Executors.newFixedThreadPool(2), 1);
+        try {
+            assertThatThrownBy(() -> CompletableFuture.supplyAsync(() -> {
+                throw new IllegalStateException("search failed");
+            }, executor).join())
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+
+            //실패한 작업이 permit 을 돌려주지 않았다면 여기서 멈춘다
+            assertThat(CompletableFuture.supplyAsync(() -> "ok", executor)
+                    .completeOnTimeout("timeout", 5, TimeUnit.SECONDS)
+                    .join()).isEqualTo("ok");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
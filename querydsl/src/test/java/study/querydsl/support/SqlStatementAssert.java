@@ -0,0 +1,35 @@
+package study.querydsl.support;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 테스트에서 한 동작에 나가는 SQL 수의 상한을 검증한다.
+ * <pre>
+ * List&lt;MemberTeamDto&gt; result = assertStatementsAtMost(sqlStatementCounter, 1, () -&gt; memberRepository.search(condition));
+ * </pre>
+ */
+public final class SqlStatementAssert {
+
+    private SqlStatementAssert() {
+    }
+
+    public static <T> T assertStatementsAtMost(SqlStatementCounter counter, long max, Supplier<T> operation) {
+        long before = counter.current();
+        T result = operation.get();
+        long executed = counter.current() - before;
+
+        assertThat(executed)
+                .as("SQL 실행 수 (N+1 확인)")
+                .isLessThanOrEqualTo(max);
+        return result;
+    }
+
+    public static void assertStatementsAtMost(SqlStatementCounter counter, long max, Runnable operation) {
+        assertStatementsAtMost(counter, max, () -> {
+            operation.run();
+            return null;
+        });
+    }
+}